@@ -0,0 +1,23 @@
+package gitlet.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/** Times gitlet add of a file just given new contents.
+ *  @author camvan
+ */
+public class AddBenchmark extends RepositoryBenchmark {
+    private int next;
+
+    @Setup(Level.Invocation)
+    public void edit() {
+        next = (next + 1) % repo.files();
+        repo.edit(next);
+    }
+
+    @Benchmark
+    public void add() {
+        repo.run("add", repo.name(next));
+    }
+}
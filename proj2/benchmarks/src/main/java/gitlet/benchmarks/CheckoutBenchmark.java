@@ -0,0 +1,29 @@
+package gitlet.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** Times gitlet checkout back and forth between master and a branch on
+ *  which a tenth of the files differ.
+ *  @author camvan
+ */
+public class CheckoutBenchmark extends RepositoryBenchmark {
+    private String target = "side";
+
+    @Override
+    protected void prepare() {
+        repo.run("branch", "side");
+        repo.run("checkout", "side");
+        for (int i = 0; i < repo.files(); i += 10) {
+            repo.edit(i);
+            repo.run("add", repo.name(i));
+        }
+        repo.run("commit", "side");
+        repo.run("checkout", "master");
+    }
+
+    @Benchmark
+    public void checkout() {
+        repo.run("checkout", target);
+        target = target.equals("side") ? "master" : "side";
+    }
+}
@@ -0,0 +1,126 @@
+package gitlet.benchmarks;
+
+import gitlet.models.Commit;
+import gitlet.models.StagingArea;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.sha1;
+
+/** Compares the Codec format of commits and of the index with the Java
+ *  serialization gitlet used before, encoding and decoding in memory.
+ *  The size of each encoding is printed when the trial starts.  Nothing
+ *  here touches a repository, so any directory will do.
+ *  @author camvan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CodecBenchmark {
+    /** Files staged in the index. */
+    @Param({"10", "1000"})
+    public int staged;
+
+    private Commit commit;
+    private StagingArea index;
+    private byte[] commitCodec;
+    private byte[] commitSerialized;
+    private byte[] indexCodec;
+    private byte[] indexSerialized;
+
+    @Setup
+    public void setup() {
+        commit = new Commit("add the benchmarks", sha1("parent"), null, sha1("tree"));
+        index = new StagingArea();
+        for (int i = 0; i < staged; i += 1) {
+            index.add(String.format("f%05d", i), sha1(Integer.toString(i)));
+        }
+        commitCodec = commit.encode();
+        commitSerialized = serialize(commit);
+        indexCodec = index.encode();
+        indexSerialized = serialize(index);
+        System.out.printf("commit: %d bytes encoded, %d serialized; index of %d files: "
+                + "%d bytes encoded, %d serialized%n", commitCodec.length,
+                commitSerialized.length, staged, indexCodec.length, indexSerialized.length);
+    }
+
+    @Benchmark
+    public byte[] encodeCommit() {
+        return commit.encode();
+    }
+
+    @Benchmark
+    public byte[] serializeCommit() {
+        return serialize(commit);
+    }
+
+    @Benchmark
+    public Commit decodeCommit() {
+        return Commit.decode(commitCodec);
+    }
+
+    @Benchmark
+    public Object deserializeCommit() {
+        return deserialize(commitSerialized);
+    }
+
+    @Benchmark
+    public byte[] encodeIndex() {
+        return index.encode();
+    }
+
+    @Benchmark
+    public byte[] serializeIndex() {
+        return serialize(index);
+    }
+
+    @Benchmark
+    public StagingArea decodeIndex() {
+        return StagingArea.decode(indexCodec);
+    }
+
+    @Benchmark
+    public Object deserializeIndex() {
+        return deserialize(indexSerialized);
+    }
+
+    private static byte[] serialize(Serializable obj) {
+        try {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            ObjectOutputStream objectStream = new ObjectOutputStream(stream);
+            objectStream.writeObject(obj);
+            objectStream.close();
+            return stream.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static Object deserialize(byte[] data) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
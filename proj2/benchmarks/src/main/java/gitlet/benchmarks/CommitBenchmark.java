@@ -0,0 +1,25 @@
+package gitlet.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+/** Times gitlet commit of one changed file, on a history that grows by a
+ *  commit each time.
+ *  @author camvan
+ */
+public class CommitBenchmark extends RepositoryBenchmark {
+    private int next;
+
+    @Setup(Level.Invocation)
+    public void stage() {
+        next = (next + 1) % repo.files();
+        repo.edit(next);
+        repo.run("add", repo.name(next));
+    }
+
+    @Benchmark
+    public void commit() {
+        repo.run("commit", "benchmark " + next);
+    }
+}
@@ -0,0 +1,28 @@
+package gitlet.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** Times the commands that read the history: log, global-log and find.
+ *  @author camvan
+ */
+public class HistoryBenchmark extends RepositoryBenchmark {
+    @Benchmark
+    public void log() {
+        repo.run("log");
+    }
+
+    @Benchmark
+    public void logFirstTen() {
+        repo.run("log", "-n", "10");
+    }
+
+    @Benchmark
+    public void globalLog() {
+        repo.run("global-log");
+    }
+
+    @Benchmark
+    public void find() {
+        repo.run("find", "change " + history / 2);
+    }
+}
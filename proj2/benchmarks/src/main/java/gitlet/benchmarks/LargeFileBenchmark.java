@@ -0,0 +1,91 @@
+package gitlet.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Times gitlet add of a large file that evolves slowly: before each add,
+ *  a few bytes are inserted into it or deleted from it at EDITS places.
+ *  Only the chunks around the edits should be new, and the space the
+ *  object store has grown by over all the versions added is printed when
+ *  the trial ends.
+ *  @author camvan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LargeFileBenchmark {
+    /** Size of the file in bytes. */
+    @Param({"2097152", "16777216"})
+    public int size;
+    /** Places the file is edited at before each add. */
+    @Param({"1", "16"})
+    public int edits;
+
+    private SyntheticRepository repo;
+    private byte[] contents;
+    private long initialBytes;
+    private int versions;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        repo = SyntheticRepository.generate(1, size, 1, 1);
+        contents = Files.readAllBytes(repo.file(repo.name(0)).toPath());
+        initialBytes = repo.objectBytes();
+    }
+
+    @Setup(Level.Invocation)
+    public void edit() {
+        Random random = repo.random();
+        for (int k = 0; k < edits; k += 1) {
+            int at = random.nextInt(contents.length - 64);
+            int length = 1 + random.nextInt(32);
+            byte[] edited;
+            if (random.nextBoolean()) {
+                edited = new byte[contents.length + length];
+                System.arraycopy(contents, 0, edited, 0, at);
+                Arrays.fill(edited, at, at + length, (byte) ('a' + random.nextInt(26)));
+                System.arraycopy(contents, at, edited, at + length, contents.length - at);
+            } else {
+                edited = new byte[contents.length - length];
+                System.arraycopy(contents, 0, edited, 0, at);
+                System.arraycopy(contents, at + length, edited, at, edited.length - at);
+            }
+            contents = edited;
+        }
+        repo.write(repo.name(0), contents);
+        versions += 1;
+    }
+
+    @Benchmark
+    public void add() {
+        repo.run("add", repo.name(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        long grown = repo.objectBytes() - initialBytes;
+        repo.close();
+        System.out.printf("%d versions of a %d-byte file added %d bytes of objects"
+                + " (%.1f%% of storing them whole)%n", versions, size, grown,
+                100.0 * grown / ((double) versions * size));
+    }
+}
@@ -0,0 +1,49 @@
+package gitlet.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Times gitlet merge of a branch that changed CHANGED files into master,
+ *  which changed as many others since they split, and resets master
+ *  after each merge.  With many files and few changes, this is the case
+ *  where the merge should skip the parts of the tree neither side
+ *  touched.
+ *  @author camvan
+ */
+public class MergeBenchmark extends RepositoryBenchmark {
+    @Param({"2", "50"})
+    public int changed;
+
+    private String base;
+
+    @Override
+    protected void prepare() {
+        int n = Math.min(changed, repo.files() / 2);
+        repo.run("branch", "side");
+        repo.run("checkout", "side");
+        for (int i = 0; i < n; i += 1) {
+            repo.edit(2 * i);
+            repo.run("add", repo.name(2 * i));
+        }
+        repo.run("commit", "side");
+        repo.run("checkout", "master");
+        for (int i = 0; i < n; i += 1) {
+            repo.edit(2 * i + 1);
+            repo.run("add", repo.name(2 * i + 1));
+        }
+        repo.run("commit", "master");
+        base = repo.head("master");
+    }
+
+    @Benchmark
+    public void merge() {
+        repo.run("merge", "side");
+    }
+
+    @TearDown(Level.Invocation)
+    public void reset() {
+        repo.run("reset", base);
+    }
+}
@@ -0,0 +1,73 @@
+package gitlet.benchmarks;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** The benchmarks of gitlet commands on a SyntheticRepository, whose
+ *  shape is set by the parameters below.  Each command is run through
+ *  Main.run, so that what is timed includes the lock, the recovery check
+ *  and the journaled writes, as in a real run of gitlet, but not the
+ *  start-up of the JVM.
+ *
+ *  Build gitlet and the benchmarks, and run them, with
+ *      mvn -f ../pom.xml install && mvn package
+ *      java -jar target/benchmarks.jar -rf json -rff results.json
+ *  which keeps the results as JSON for tracking them over time.  Options
+ *  such as -p files=10000 or a benchmark name pattern pick what is run.
+ *  @author camvan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public abstract class RepositoryBenchmark {
+    /** Number of files tracked. */
+    @Param({"100", "1000"})
+    public int files;
+    /** Size of each file in bytes. */
+    @Param({"4096"})
+    public int fileSize;
+    /** Number of commits, not counting merges. */
+    @Param({"200"})
+    public int history;
+    /** Number of branches the commits are spread over. */
+    @Param({"1", "4"})
+    public int branches;
+
+    protected SyntheticRepository repo;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        configure();
+        repo = SyntheticRepository.generate(files, fileSize, history, branches);
+        prepare();
+    }
+
+    /** Sets up what gitlet reads when it is loaded, before the repository
+     *  is generated. */
+    protected void configure() {
+    }
+
+    /** Readies the generated repository for the benchmark. */
+    protected void prepare() {
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        repo.close();
+    }
+}
@@ -0,0 +1,32 @@
+package gitlet.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+/** Times gitlet status with a tenth of the files changed and as many new
+ *  files untracked, scanning the working directory on PARALLELISM
+ *  threads.
+ *  @author camvan
+ */
+public class StatusBenchmark extends RepositoryBenchmark {
+    @Param({"1", "8"})
+    public int parallelism;
+
+    @Override
+    protected void configure() {
+        System.setProperty("gitlet.parallelism", Integer.toString(parallelism));
+    }
+
+    @Override
+    protected void prepare() {
+        for (int i = 0; i < repo.files(); i += 10) {
+            repo.edit(i);
+            repo.edit("untracked" + i);
+        }
+    }
+
+    @Benchmark
+    public void status() {
+        repo.run("status");
+    }
+}
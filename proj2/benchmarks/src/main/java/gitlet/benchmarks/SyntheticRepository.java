@@ -0,0 +1,188 @@
+package gitlet.benchmarks;
+
+import gitlet.Main;
+import gitlet.Repository;
+import gitlet.store.Refs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/** A repository of generated files and history in a temporary directory,
+ *  for the benchmarks to run commands in.  It has FILES files named
+ *  f00000, f00001, ... of FILESIZE bytes of random text each, and HISTORY
+ *  commits made in turn on BRANCHES branches, master among them.  Each
+ *  commit changes a few of the files of its branch, the files whose
+ *  number is the branch's modulo BRANCHES, and every MERGE_EVERY rounds
+ *  the other branches are merged into master, which never conflicts.
+ *
+ *  Gitlet works in the directory its JVM started in, which Repository
+ *  reads when it is loaded, so a SyntheticRepository has to be generated
+ *  before anything else touches Repository, and only one per JVM.  JMH
+ *  runs each benchmark, and each set of its parameters, in a fork of its
+ *  own, which sees to both.
+ *  @author camvan
+ */
+public class SyntheticRepository {
+    /** Rounds of commits between merges into master. */
+    private static final int MERGE_EVERY = 8;
+    /** Characters in each line of a generated file. */
+    private static final int LINE = 64;
+
+    private final File dir;
+    private final int files;
+    private final int fileSize;
+    private final Random random = new Random(61);
+    private final PrintStream stdout = System.out;
+
+    private SyntheticRepository(File dir, int files, int fileSize) {
+        this.dir = dir;
+        this.files = files;
+        this.fileSize = fileSize;
+    }
+
+    /** Returns a new repository with FILES files of FILESIZE bytes and
+     *  HISTORY commits on BRANCHES branches, with master checked out.
+     *  Whatever the commands print is thrown away until close(). */
+    public static SyntheticRepository generate(int files, int fileSize, int history,
+                                               int branches) {
+        if (files < branches || branches < 1 || history < 1) {
+            throw new IllegalArgumentException("need 1 <= branches <= files and history >= 1");
+        }
+        File dir;
+        try {
+            dir = Files.createTempDirectory("gitlet-bench").toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        System.setProperty("user.dir", dir.getPath());
+        if (!Repository.CWD.equals(dir)) {
+            throw new IllegalStateException("Repository was loaded before the synthetic "
+                    + "repository was made; run each benchmark in a fork of its own.");
+        }
+        SyntheticRepository repo = new SyntheticRepository(dir, files, fileSize);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        repo.build(history, branches);
+        return repo;
+    }
+
+    private void build(int history, int branches) {
+        run("init");
+        for (int i = 0; i < files; i += 1) {
+            edit(i);
+            run("add", name(i));
+        }
+        run("commit", "add " + files + " files");
+        String[] names = new String[branches];
+        names[0] = "master";
+        for (int b = 1; b < branches; b += 1) {
+            names[b] = "branch" + b;
+            run("branch", names[b]);
+        }
+        String current = names[0];
+        for (int i = 1; i < history; i += 1) {
+            // master goes first in each round, so no merge fast-forwards
+            int b = (i - 1) % branches;
+            if (!names[b].equals(current)) {
+                current = names[b];
+                run("checkout", current);
+            }
+            int edits = Math.max(1, files / branches / 50);
+            for (int k = 0; k < edits; k += 1) {
+                int slice = (files - b + branches - 1) / branches;
+                String name = name(b + branches * random.nextInt(slice));
+                edit(name);
+                run("add", name);
+            }
+            run("commit", "change " + i);
+            if (branches > 1 && b == branches - 1 && ((i - 1) / branches) % MERGE_EVERY == 0) {
+                current = names[0];
+                run("checkout", current);
+                for (int o = 1; o < branches; o += 1) {
+                    run("merge", names[o]);
+                }
+            }
+        }
+        if (!current.equals(names[0])) {
+            run("checkout", names[0]);
+        }
+    }
+
+    /** Runs the gitlet command in ARGS, as the daemon would. */
+    public void run(String... args) {
+        Main.run(args);
+    }
+
+    /** Returns the name of file number I. */
+    public String name(int i) {
+        return String.format("f%05d", i);
+    }
+
+    /** Returns the number of files generated. */
+    public int files() {
+        return files;
+    }
+
+    /** Returns the file NAME in the working directory. */
+    public File file(String name) {
+        return new File(dir, name);
+    }
+
+    /** Gives file number I new random contents. */
+    public void edit(int i) {
+        edit(name(i));
+    }
+
+    /** Gives the file NAME new random contents. */
+    public void edit(String name) {
+        byte[] text = new byte[fileSize];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = i % LINE == LINE - 1 ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+        }
+        write(name, text);
+    }
+
+    /** Replaces the contents of the file NAME with CONTENTS. */
+    public void write(String name, byte[] contents) {
+        try {
+            Files.write(file(name).toPath(), contents);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the random numbers the contents are made from. */
+    public Random random() {
+        return random;
+    }
+
+    /** Returns the id of the commit at the head of branch NAME. */
+    public String head(String name) {
+        return Refs.branch(name);
+    }
+
+    /** Returns the bytes taken by the files under .gitlet/objects. */
+    public long objectBytes() {
+        try (Stream<Path> paths = Files.walk(Repository.OBJECTS_DIR.toPath())) {
+            return paths.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Restores standard output and deletes the repository. */
+    public void close() {
+        System.setOut(stdout);
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** `gitlet batch`: runs the commands read from an input stream, one per
+ *  line, in this process.  The index, the branches and the commit-id
+ *  table stay in memory between commands and are only written out at a
+ *  `checkpoint` line and at the end of the input, so importing a long
+ *  history costs one write of each instead of one per command.
+ *
+ *  Each line holds the arguments of one command as they would be given to
+ *  gitlet, without the program name.  Arguments are separated by spaces
+ *  and may be quoted with '...' or "..."; inside double quotes and outside
+ *  quotes, a backslash escapes the next character.  Blank lines and lines
+ *  starting with # are skipped.  An error is printed as it would be by a
+ *  single command, and the batch goes on with the next line.  An
+ *  unexpected error ends the batch, and what it changed since the last
+ *  checkpoint is not written, as it is not for a single command.
+ *  @author camvan
+ */
+public class Batch {
+    public static void run(InputStream input) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Repository.deferWrites();
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    execute(split(line));
+                } catch (GitletException excp) {
+                    System.out.println(excp.getMessage());
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        // not on an unexpected error, which leaves the writes since the
+        // last checkpoint for the deferral around the batch to drop
+        Repository.flush();
+    }
+
+    private static void execute(List<String> args) {
+        if (args.isEmpty() || args.get(0).startsWith("#")) {
+            return;
+        }
+        switch (args.get(0)) {
+            case "checkpoint":
+                Repository.flush();
+                return;
+            case "batch":
+            case "daemon":
+                throw new GitletException("Cannot run " + args.get(0) + " in a batch.");
+            default:
+                Main.run(args.toArray(new String[0]));
+        }
+    }
+
+    /** Returns the arguments on LINE. */
+    static List<String> split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder arg = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (arg != null) {
+                    args.add(arg.toString());
+                    arg = null;
+                }
+                continue;
+            }
+            if (arg == null) {
+                arg = new StringBuilder();
+            }
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                arg.append(line.charAt(i));
+            } else if (c == quote) {
+                quote = 0;
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else {
+                arg.append(c);
+            }
+        }
+        if (quote != 0) {
+            throw new GitletException("Unterminated quote.");
+        }
+        if (arg != null) {
+            args.add(arg.toString());
+        }
+        return args;
+    }
+}
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** A thin client for a gitlet Daemon.  Usage: java gitlet.Client ARGS,
+ *  with the same ARGS as gitlet.Main.  The command is sent to the daemon
+ *  serving the repository in the current directory and its output copied
+ *  back; if no daemon is running, or the command is a batch, it is run
+ *  in this process instead.
+ *
+ *  A request is the number of arguments followed by each argument as a
+ *  length-prefixed UTF-8 string.  The reply is a sequence of frames, each
+ *  a stream byte (OUT or ERR), a length and that many bytes of output,
+ *  ended by an EXIT byte and the exit status of the command.
+ *  @author camvan
+ */
+public class Client {
+    static final int EXIT = 0;
+    static final int OUT = 1;
+    static final int ERR = 2;
+
+    public static void main(String[] args) {
+        // a batch reads its commands from this process's standard input
+        boolean local = args.length == 0 || args[0].equals("batch");
+        SocketChannel channel = local ? null : connect(socket());
+        if (channel == null) {
+            Main.main(args);
+            return;
+        }
+        int status = call(channel, args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** The daemon socket of the repository in the current directory. */
+    static Path socket() {
+        return Path.of(System.getProperty("user.dir"), ".gitlet", "daemon.sock");
+    }
+
+    /** Returns a connection to the daemon listening on SOCKET, or null if
+     *  there is none. */
+    static SocketChannel connect(Path socket) {
+        if (!Files.exists(socket)) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Sends ARGS through CHANNEL, copies the reply to System.out and
+     *  System.err, closes CHANNEL and returns the exit status. */
+    static int call(SocketChannel channel, String[] args) {
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)));
+            writeArgs(out, args);
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                int stream = in.readUnsignedByte();
+                if (stream == EXIT) {
+                    return in.readInt();
+                }
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                PrintStream target = stream == ERR ? System.err : System.out;
+                target.write(data);
+                target.flush();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    static void writeArgs(DataOutputStream out, String[] args) throws IOException {
+        out.writeInt(args.length);
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String[] readArgs(DataInputStream in) throws IOException {
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            args[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return args;
+    }
+}
@@ -0,0 +1,166 @@
+package gitlet;
+
+import gitlet.store.CommitGraph;
+import gitlet.store.CommitIdIndex;
+import gitlet.store.PackFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static gitlet.Utils.*;
+
+/** Serves gitlet commands for the repository in the current directory
+ *  over the Unix-domain socket .gitlet/daemon.sock, so that scripts can
+ *  run many commands in one warm JVM: classes stay loaded and compiled,
+ *  and the object caches stay filled from one command to the next.
+ *
+ *  Requests are served one at a time.  While a command runs, System.out
+ *  and System.err are sent back to its client; see Client for the
+ *  protocol.  `gitlet daemon stop` asks a running daemon to exit.
+ *  @author camvan
+ */
+public class Daemon {
+    public static final File SOCKET = join(Repository.GITLET_DIR, "daemon.sock");
+
+    private static boolean stopping;
+
+    /** Serves requests until asked to stop. */
+    public static void serve() {
+        Path path = SOCKET.toPath();
+        SocketChannel running = Client.connect(path);
+        if (running != null) {
+            Client.call(running, new String[0]);
+            throw new GitletException("A daemon is already running.");
+        }
+        try {
+            Files.deleteIfExists(path);
+            try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+                server.bind(UnixDomainSocketAddress.of(path));
+                Runtime.getRuntime().addShutdownHook(new Thread(SOCKET::delete));
+                while (!stopping) {
+                    try (SocketChannel client = server.accept()) {
+                        handle(client);
+                    } catch (IOException excp) {
+                        //the client went away; serve the next one
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Asks the daemon of this repository to exit. */
+    public static void stop() {
+        SocketChannel channel = Client.connect(SOCKET.toPath());
+        if (channel == null) {
+            throw new GitletException("No daemon is running.");
+        }
+        Client.call(channel, new String[]{"daemon", "stop"});
+    }
+
+    private static void handle(SocketChannel channel) throws IOException {
+        String[] args = Client.readArgs(new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel))));
+        DataOutputStream reply = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+        PrintStream out = new PrintStream(new BufferedOutputStream(new Frames(reply, Client.OUT)));
+        PrintStream err = new PrintStream(new BufferedOutputStream(new Frames(reply, Client.ERR)));
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        int status;
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            status = execute(args);
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            out.flush();
+            err.flush();
+        }
+        reply.writeByte(Client.EXIT);
+        reply.writeInt(status);
+        reply.flush();
+    }
+
+    /** Runs the command in ARGS and returns its exit status.  An empty
+     *  request only checks that the daemon is alive. */
+    private static int execute(String[] args) {
+        if (args.length == 0) {
+            return 0;
+        }
+        if (args[0].equals("batch")) {
+            System.out.println("Run batch without the daemon.");
+            return 0;
+        }
+        if (args[0].equals("daemon")) {
+            if (args.length == 2 && args[1].equals("stop")) {
+                stopping = true;
+            } else {
+                System.out.println("A daemon is already running.");
+            }
+            return 0;
+        }
+        // Other processes may have changed the repository since the last
+        // request; only the caches of immutable objects are kept.
+        CommitGraph.forget();
+        CommitIdIndex.forget();
+        PackFile.reload();
+        try {
+            Main.run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } catch (RuntimeException excp) {
+            excp.printStackTrace();
+            return 1;
+        }
+        return 0;
+    }
+
+    /** Sends everything written to it as frames of one stream. */
+    private static class Frames extends OutputStream {
+        private final DataOutputStream reply;
+        private final int stream;
+
+        Frames(DataOutputStream reply, int stream) {
+            this.reply = reply;
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            reply.writeByte(stream);
+            reply.writeInt(len);
+            reply.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            reply.flush();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/** Line-by-line differences between two texts, found with Myers' O(ND)
+ *  algorithm in its linear-space form: a point in the middle of an optimal
+ *  path through the edit graph is found by searching from both ends at
+ *  once, and the two halves on either side of it are compared in turn, so
+ *  no more than O(N) memory is used however many lines differ.
+ *
+ *  Texts are split into lines that keep their terminators, decoded as
+ *  ISO-8859-1 so that every byte, valid UTF-8 or not, round-trips.  Lines
+ *  are compared by number after interning.  When the search for the middle
+ *  point grows past MAX_COST, the furthest point reached is used as the
+ *  split instead, as git's xdiff does; the result may then be slightly
+ *  longer than minimal, but totally unrelated files are no longer
+ *  quadratic.
+ *  @author camvan
+ */
+public class Diff {
+    /** Edit cost after which the middle snake search gives up. */
+    private static final int MAX_COST = 1 << 10;
+
+    /** A region where two texts differ: lines [aStart, aEnd) of the first
+     *  are replaced by lines [bStart, bEnd) of the second. */
+    public static class Edit {
+        public final int aStart;
+        public final int aEnd;
+        public final int bStart;
+        public final int bEnd;
+
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    private final long[] a;
+    private final long[] b;
+    /** furthest x reached on each diagonal near the middle, forwards and
+     *  backwards */
+    private final int[] forward;
+    private final int[] backward;
+    private final Consumer<Edit> sink;
+    /** the last edit found, held back in case the next one adjoins it */
+    private Edit last;
+
+    private Diff(long[] a, long[] b, Consumer<Edit> sink) {
+        this.a = a;
+        this.b = b;
+        this.sink = sink;
+        int size = 2 * reach(a.length, b.length) + 2;
+        this.forward = new int[size];
+        this.backward = new int[size];
+    }
+
+    /** Returns the lines of CONTENT, each with its line terminator. */
+    public static List<String> lines(byte[] content) {
+        String text = new String(content, StandardCharsets.ISO_8859_1);
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    /** Returns the bytes of LINES joined together. */
+    public static byte[] join(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line);
+        }
+        return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /** Returns the edits that turn lines A into lines B, in order. */
+    public static List<Edit> diff(List<String> a, List<String> b) {
+        Map<String, Integer> ids = new HashMap<>();
+        return diff(intern(a, ids), intern(b, ids));
+    }
+
+    /** Returns the edits that turn A into B, in order. */
+    static List<Edit> diff(long[] a, long[] b) {
+        List<Edit> edits = new ArrayList<>();
+        diff(a, b, edits::add);
+        return edits;
+    }
+
+    /** Passes the edits that turn A into B to SINK, in order, each as soon
+     *  as it is known to be complete. */
+    static void diff(long[] a, long[] b, Consumer<Edit> sink) {
+        Diff d = new Diff(a, b, sink);
+        d.compare(0, a.length, 0, b.length);
+        if (d.last != null) {
+            sink.accept(d.last);
+        }
+    }
+
+    /** Returns LINES as numbers, equal lines getting equal numbers from
+     *  IDS, which is shared by every text to be compared. */
+    static long[] intern(List<String> lines, Map<String, Integer> ids) {
+        long[] result = new long[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Integer id = ids.get(lines.get(i));
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines.get(i), id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    /** Adds the edits that turn A[aLo..aHi) into B[bLo..bHi). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            if (aLo < aHi || bLo < bHi) {
+                add(aLo, aHi, bLo, bHi);
+            }
+            return;
+        }
+        int[] split = bisect(aLo, aHi, bLo, bHi);
+        if (split == null || split[0] == aLo && split[1] == bLo
+                || split[0] == aHi && split[1] == bHi) {
+            // nothing in common, or no progress
+            add(aLo, aHi, bLo, bHi);
+            return;
+        }
+        compare(aLo, split[0], bLo, split[1]);
+        compare(split[0], aHi, split[1], bHi);
+    }
+
+    private void add(int aStart, int aEnd, int bStart, int bEnd) {
+        if (last != null && last.aEnd == aStart && last.bEnd == bStart) {
+            last = new Edit(last.aStart, aEnd, last.bStart, bEnd);
+            return;
+        }
+        if (last != null) {
+            sink.accept(last);
+        }
+        last = new Edit(aStart, aEnd, bStart, bEnd);
+    }
+
+    /** Returns {x, y}: a point on an optimal path from (aLo, bLo) to
+     *  (aHi, bHi) that splits it into two halves of about equal cost, found
+     *  by searching from both ends until the searches meet; or null if
+     *  the two ranges have no line in common.  Diagonals are numbered by
+     *  x - y, forwards from (aLo, bLo) and backwards from (aHi, bHi). */
+    private int[] bisect(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int off = reach(n, m);
+        int len = 2 * off;
+        Arrays.fill(forward, 0, len, -1);
+        Arrays.fill(backward, 0, len, -1);
+        forward[off + 1] = 0;
+        backward[off + 1] = 0;
+        int delta = n - m;
+        // with an odd delta the searches meet while going forwards
+        boolean front = (delta & 1) != 0;
+        // diagonals at either end that have run off the edit graph
+        int fStart = 0;
+        int fEnd = 0;
+        int bStart = 0;
+        int bEnd = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k = -d + fStart; k <= d - fEnd; k += 2) {
+                int i = off + k;
+                int x = k == -d || k != d && forward[i - 1] < forward[i + 1]
+                        ? forward[i + 1] : forward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[i] = x;
+                if (x > n) {
+                    fEnd += 2;
+                } else if (y > m) {
+                    fStart += 2;
+                } else if (front) {
+                    int j = off + delta - k;
+                    if (j >= 0 && j < len && backward[j] != -1 && x >= n - backward[j]) {
+                        return new int[]{aLo + x, bLo + y};
+                    }
+                }
+            }
+            for (int k = -d + bStart; k <= d - bEnd; k += 2) {
+                int i = off + k;
+                int x = k == -d || k != d && backward[i - 1] < backward[i + 1]
+                        ? backward[i + 1] : backward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[i] = x;
+                if (x > n) {
+                    bEnd += 2;
+                } else if (y > m) {
+                    bStart += 2;
+                } else if (!front) {
+                    int j = off + delta - k;
+                    if (j >= 0 && j < len && forward[j] != -1 && forward[j] >= n - x) {
+                        int fx = forward[j];
+                        return new int[]{aLo + fx, bLo + fx - (j - off)};
+                    }
+                }
+            }
+            if (d >= MAX_COST) {
+                return furthest(d, n, m, aLo, bLo, off);
+            }
+        }
+        return null;
+    }
+
+    /** Returns how far from the middle diagonal the searches in ranges of
+     *  N and M lines can get: the cost is never above MAX_COST, so the
+     *  arrays of furthest points stay small however long the texts are. */
+    private static int reach(int n, int m) {
+        return Math.min((n + m + 1) / 2, MAX_COST + 1);
+    }
+
+    /** Returns the point furthest from (aLo, bLo) that the forward search
+     *  reached within cost D. */
+    private int[] furthest(int d, int n, int m, int aLo, int bLo, int off) {
+        int bestX = 0;
+        int bestY = 0;
+        for (int k = -d; k <= d; k += 2) {
+            int x = forward[off + k];
+            int y = x - k;
+            if (x < 0 || x > n || y < 0 || y > m) {
+                continue;
+            }
+            if (x + y > bestX + bestY) {
+                bestX = x;
+                bestY = y;
+            }
+        }
+        return new int[]{aLo + bestX, bLo + bestY};
+    }
+}
@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Three-way merge of texts in the manner of diff3.  Both versions are
+ *  compared with their common ancestor, and their edits are grouped into
+ *  chunks of edits that overlap or touch in the ancestor.  A chunk edited
+ *  on one side only takes that side's lines, as does one edited the same
+ *  way on both sides; any other chunk is a conflict and is written between
+ *  the same markers that mark a conflicting file as a whole.
+ *  @author camvan
+ */
+public class Diff3 {
+    static final String OURS = "<<<<<<< HEAD\n";
+    static final String SEPARATOR = "=======\n";
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** The merged text and whether any chunk of it conflicts. */
+    public static class Result {
+        public final byte[] content;
+        public final boolean conflict;
+
+        Result(byte[] content, boolean conflict) {
+            this.content = content;
+            this.conflict = conflict;
+        }
+    }
+
+    /** Returns the merge of OURS and THEIRS, two versions of BASE. */
+    public static Result merge(byte[] base, byte[] ours, byte[] theirs) {
+        List<String> baseLines = Diff.lines(base);
+        List<String> ourLines = Diff.lines(ours);
+        List<String> theirLines = Diff.lines(theirs);
+        Map<String, Integer> ids = new HashMap<>();
+        long[] b = Diff.intern(baseLines, ids);
+        long[] o = Diff.intern(ourLines, ids);
+        long[] t = Diff.intern(theirLines, ids);
+        List<Diff.Edit> ourEdits = Diff.diff(b, o);
+        List<Diff.Edit> theirEdits = Diff.diff(b, t);
+
+        List<String> out = new ArrayList<>();
+        boolean conflict = false;
+        int i = 0;
+        int j = 0;
+        // lines each side has added minus those it removed so far
+        int ourShift = 0;
+        int theirShift = 0;
+        int done = 0;
+        while (i < ourEdits.size() || j < theirEdits.size()) {
+            int lo = Math.min(i < ourEdits.size() ? ourEdits.get(i).aStart : Integer.MAX_VALUE,
+                    j < theirEdits.size() ? theirEdits.get(j).aStart : Integer.MAX_VALUE);
+            int hi = lo;
+            int ourLo = lo + ourShift;
+            int theirLo = lo + theirShift;
+            boolean ourChange = false;
+            boolean theirChange = false;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                while (i < ourEdits.size() && ourEdits.get(i).aStart <= hi) {
+                    Diff.Edit e = ourEdits.get(i);
+                    hi = Math.max(hi, e.aEnd);
+                    ourShift += (e.bEnd - e.bStart) - (e.aEnd - e.aStart);
+                    ourChange = true;
+                    grown = true;
+                    i += 1;
+                }
+                while (j < theirEdits.size() && theirEdits.get(j).aStart <= hi) {
+                    Diff.Edit e = theirEdits.get(j);
+                    hi = Math.max(hi, e.aEnd);
+                    theirShift += (e.bEnd - e.bStart) - (e.aEnd - e.aStart);
+                    theirChange = true;
+                    grown = true;
+                    j += 1;
+                }
+            }
+            List<String> mine = ourLines.subList(ourLo, hi + ourShift);
+            List<String> yours = theirLines.subList(theirLo, hi + theirShift);
+
+            out.addAll(baseLines.subList(done, lo));
+            if (!theirChange || ourChange && mine.equals(yours)) {
+                out.addAll(mine);
+            } else if (!ourChange) {
+                out.addAll(yours);
+            } else {
+                out.add(OURS);
+                out.addAll(mine);
+                out.add(SEPARATOR);
+                out.addAll(yours);
+                out.add(THEIRS);
+                conflict = true;
+            }
+            done = hi;
+        }
+        out.addAll(baseLines.subList(done, baseLines.size()));
+        return new Result(Diff.join(out), conflict);
+    }
+}
@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The options of log and global-log, parsed from their arguments:
+ *    -n COUNT         show at most COUNT commits
+ *    --since=DATE     only commits made at or after DATE
+ *    --until=DATE     only commits made at or before DATE
+ *    --format=FORMAT  print each commit as FORMAT, in which %H stands for
+ *                     its id, %h for its first seven characters, %P and
+ *                     %p for the ids of its parents, %ad for its date, %s
+ *                     for its message, %n for a newline and %% for %.
+ *  A DATE is yyyy-MM-dd, meaning the whole day, or yyyy-MM-ddTHH:mm[:ss],
+ *  in local time.  Any other argument is an operand.
+ *  @author camvan
+ */
+public class LogOptions {
+    private int limit = Integer.MAX_VALUE;
+    private long since = Long.MIN_VALUE;
+    private long until = Long.MAX_VALUE;
+    private String format;
+    private final List<String> operands = new ArrayList<>();
+
+    /** Parses ARGS from position FROM on. */
+    public LogOptions(String[] args, int from) {
+        for (int i = from; i < args.length; i += 1) {
+            String arg = args[i];
+            if (arg.equals("-n") && i + 1 < args.length) {
+                i += 1;
+                limit = count(args[i]);
+            } else if (arg.startsWith("--since=")) {
+                since = time(arg.substring("--since=".length()), false);
+            } else if (arg.startsWith("--until=")) {
+                until = time(arg.substring("--until=".length()), true);
+            } else if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+            } else if (arg.startsWith("-")) {
+                throw new GitletException("Incorrect operands.");
+            } else {
+                operands.add(arg);
+            }
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public long since() {
+        return since;
+    }
+
+    public long until() {
+        return until;
+    }
+
+    /** Returns the format to print commits in, or null for the usual one. */
+    public String format() {
+        return format;
+    }
+
+    public List<String> operands() {
+        return operands;
+    }
+
+    private static int count(String text) {
+        try {
+            int n = Integer.parseInt(text);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException excp) {
+            // reported below
+        }
+        throw new GitletException("Incorrect operands.");
+    }
+
+    /** Returns the time in milliseconds of DATE, its end if a whole day
+     *  and END, its start otherwise. */
+    private static long time(String date, boolean end) {
+        ZoneId zone = ZoneId.systemDefault();
+        try {
+            if (date.length() == "yyyy-MM-dd".length()) {
+                LocalDate day = LocalDate.parse(date);
+                if (end) {
+                    return day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+                }
+                return day.atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+            return LocalDateTime.parse(date).atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+}
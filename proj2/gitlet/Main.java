@@ -1,6 +1,10 @@
 package gitlet;
 
 import gitlet.commands.*;
+import gitlet.store.Lock;
+import gitlet.store.ObjectStore;
+
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
@@ -13,14 +17,19 @@ public class Main {
 
     static {
         COMMAND_MAP.put("add", AddCommand::new);
+        COMMAND_MAP.put("batch", BatchCommand::new);
         COMMAND_MAP.put("branch", BranchCommand::new);
         COMMAND_MAP.put("checkout", CheckoutCommand::new);
         COMMAND_MAP.put("commit", CommitCommand::new);
+        COMMAND_MAP.put("daemon", DaemonCommand::new);
+        COMMAND_MAP.put("diff", DiffCommand::new);
         COMMAND_MAP.put("find", FindCommand::new);
+        COMMAND_MAP.put("gc", GcCommand::new);
         COMMAND_MAP.put("global-log", GlobalLogCommand::new);
         COMMAND_MAP.put("init", InitCommand::new);
         COMMAND_MAP.put("log", LogCommand::new);
         COMMAND_MAP.put("merge", MergeCommand::new);
+        COMMAND_MAP.put("pack", PackCommand::new);
         COMMAND_MAP.put("reset", ResetCommand::new);
         COMMAND_MAP.put("rm-branch", RmBranchCommand::new);
         COMMAND_MAP.put("rm", RmCommand::new);
@@ -28,25 +37,86 @@ public class Main {
     }
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND1> <OPERAND2> ... 
+     *  [--stats] <COMMAND> <OPERAND1> <OPERAND2> ... 
+     *  With --stats, the use of the object caches is reported on standard
+     *  error once the command is done, and with GITLET_TRACE set in the
+     *  environment, the time spent on each step that Trace probes.
      */
 
     public static void main(String[] args) {
-        if (args.length == 0) {
-            System.out.println("Please enter a command.");
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
             System.exit(0);
         }
+    }
 
-        String commandName = args[0];
+    /** Runs the command in ARGS.  User errors are thrown as
+     *  GitletExceptions carrying the message to print. */
+    public static void run(String[] args) {
+        boolean stats = args.length > 0 && args[0].equals("--stats");
+        if (stats) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        try {
+            if (args.length == 0) {
+                throw new GitletException("Please enter a command.");
+            }
 
-        Function<String[], Command> creator = COMMAND_MAP.get(commandName);
+            String commandName = args[0];
 
-        if (creator == null) {
-            System.out.println("No command with that name exists.");
-            System.exit(0);
+            Function<String[], Command> creator = COMMAND_MAP.get(commandName);
+
+            if (creator == null) {
+                throw new GitletException("No command with that name exists.");
+            }
+
+            Command cmd = creator.apply(args);
+            if (!cmd.locksRepository() || !Repository.GITLET_DIR.isDirectory()) {
+                execute(cmd);
+                return;
+            }
+            Lock.acquire(!cmd.readOnly());
+            try {
+                Repository.recover();
+                execute(cmd);
+            } finally {
+                Lock.release();
+            }
+        } finally {
+            if (stats) {
+                System.err.println(ObjectStore.COMMITS.stats());
+                System.err.println(ObjectStore.BLOBS.stats());
+                System.err.println(ObjectStore.TREES.stats());
+            }
+            if (Trace.ENABLED) {
+                Trace.report(System.err);
+            }
         }
+    }
 
-        Command cmd = creator.apply(args);
-        cmd.execute();
+    /** Runs CMD with the writes to the index, HEAD, the branches and the
+     *  commit-id table held back until it is done, so that they are made
+     *  together, or not at all if it fails with an unexpected error. */
+    private static void execute(Command cmd) {
+        // the daemon serves each request through run(), which does this
+        long start = Trace.start();
+        if (!cmd.locksRepository() || !Repository.deferWrites()) {
+            cmd.execute();
+            Trace.end(cmd.getClass().getSimpleName() + ".execute", start, 0);
+            return;
+        }
+        boolean keep = false;
+        try {
+            cmd.execute();
+            keep = true;
+        } catch (GitletException excp) {
+            keep = true;
+            throw excp;
+        } finally {
+            Repository.endDeferral(keep);
+            Trace.end(cmd.getClass().getSimpleName() + ".execute", start, 0);
+        }
     }
 }
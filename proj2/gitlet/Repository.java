@@ -1,9 +1,28 @@
 package gitlet;
 
 import gitlet.models.*;
-
+import gitlet.store.Bitmap;
+import gitlet.store.CommitBitmaps;
+import gitlet.store.CommitGraph;
+import gitlet.store.History;
+import gitlet.store.CommitIdIndex;
+import gitlet.store.Journal;
+import gitlet.store.Lock;
+import gitlet.store.MessageIndex;
+import gitlet.store.ObjectSet;
+import gitlet.store.ObjectStore;
+import gitlet.store.PackFile;
+import gitlet.store.Refs;
+import gitlet.store.Delta;
+
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.OutputStream;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static gitlet.Utils.*;
 
@@ -34,6 +53,9 @@ public class Repository {
     public static void init() {
         mkdir(GITLET_DIR);
         mkdir(OBJECTS_DIR);
+        mkdir(ObjectStore.COMMITS_DIR);
+        mkdir(ObjectStore.BLOBS_DIR);
+        mkdir(ObjectStore.TREES_DIR);
         mkdir(REFS_DIR);
         mkdir(HEADS_DIR);
 
@@ -42,49 +64,128 @@ public class Repository {
 
         String branch = "master";
 
-        Commit initialCommit = new Commit("initial commit", null, null, new HashMap<>());
+        Commit initialCommit = new Commit("initial commit", null, null,
+                Tree.write(new HashMap<>()));
         initialCommit.setTimestamp(new java.util.Date(0));
+        initialCommit.setGeneration(1);
 
         initialCommit.save();
+        CommitGraph.load().add(initialCommit);
+        CommitBitmaps.update(CommitGraph.load());
+        CommitIdIndex.add(initialCommit.getId());
+        MessageIndex.add(initialCommit);
+
+        Refs.setBranch(branch, initialCommit.getId());
+        Refs.setCurrentBranch(branch);
+    }
 
-        File masterBranch = join(HEADS_DIR, branch);
-        writeContents(masterBranch, initialCommit.getId());
+    private static boolean writesDeferred;
 
-        writeContents(HEAD_FILE, branch);
+    /** Keeps the index, the branches and new entries of the commit-id
+     *  table in memory from now on, until flush() writes them out.
+     *  Returns false if writes were deferred already. */
+    public static boolean deferWrites() {
+        if (writesDeferred) {
+            return false;
+        }
+        writesDeferred = true;
+        StagingArea.defer();
+        Refs.defer();
+        CommitIdIndex.defer();
+        return true;
+    }
+
+    /** Writes out everything held back since deferWrites(), as a single
+     *  update of the Journal. */
+    public static void flush() {
+        Journal.begin();
+        try {
+            StagingArea.flush();
+            Refs.flush();
+            CommitIdIndex.flush();
+            Journal.commit();
+        } catch (RuntimeException excp) {
+            Journal.abort();
+            throw excp;
+        }
+    }
+
+    /** Ends the deferral begun by deferWrites(), writing out what it held
+     *  back if KEEP, and dropping it otherwise. */
+    public static void endDeferral(boolean keep) {
+        if (keep) {
+            flush();
+        }
+        StagingArea.resume();
+        Refs.resume();
+        CommitIdIndex.resume();
+        writesDeferred = false;
+    }
+
+    /** Finishes or forgets an update of the repository's files that was
+     *  interrupted by a crash, and brings the on-disk layout of an older
+     *  repository up to date, building the indexes it lacks or that a
+     *  crash left damaged.  The lock is
+     *  made exclusive first if there is anything to do; the caller holds
+     *  it at least shared, so no other process can be in the middle of an
+     *  update, and commands that only read never write an index. */
+    public static void recover() {
+        boolean noIndexes = !CommitGraph.intact()
+                || !CommitBitmaps.BITMAP_FILE.exists()
+                || !CommitIdIndex.INDEX_FILE.exists() || !MessageIndex.INDEX_DIR.isDirectory();
+        if (Journal.interrupted() || ObjectStore.needsMigration() || noIndexes) {
+            Lock.upgrade();
+            Journal.recover();
+            ObjectStore.migrate();
+            if (!CommitGraph.intact()) {
+                // missing, in an older format, or with an append cut short
+                CommitGraph.rebuild(ObjectStore.commitIds());
+                CommitBitmaps.rebuild(CommitGraph.load());
+            }
+            if (!CommitBitmaps.BITMAP_FILE.exists()) {
+                CommitBitmaps.update(CommitGraph.load());
+            }
+            if (!CommitIdIndex.INDEX_FILE.exists()) {
+                CommitIdIndex.rebuild();
+            }
+            if (!MessageIndex.INDEX_DIR.isDirectory()) {
+                MessageIndex.rebuild();
+            } else {
+                MessageIndex.recover();
+            }
+        }
     }
 
     private static Commit getHeadCommit() {
-        String headName = readContentsAsString(HEAD_FILE);
-        File headCommitFile = join(HEADS_DIR, headName);
-        if (!headCommitFile.exists()) {
+        String commitHash = Refs.branch(Refs.currentBranch());
+        if (commitHash == null) {
             return null;
         }
-        String commitHash = readContentsAsString(headCommitFile);
-        return readObject(join(OBJECTS_DIR, commitHash), Commit.class);
+        return readCommit(commitHash);
+    }
+
+    private static Commit readCommit(String commitId) {
+        return ObjectStore.readCommit(commitId);
     }
 
     private static void updateHeadCommit(Commit commit) {
-        String headName = readContentsAsString(HEAD_FILE);
-        File headCommitFile = join(HEADS_DIR, headName);
-        writeContents(headCommitFile, commit.getId());
+        Refs.setBranch(Refs.currentBranch(), commit.getId());
     }
 
     public static void add(String fileName) {
         File file = join(CWD, fileName);
         if (!file.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            throw new GitletException("File does not exist.");
         }
 
-        Blob blob = new Blob(fileName, file);
-        String currentHash = blob.getId();
         Commit head = getHeadCommit();
         StagingArea index = StagingArea.load();
+        String currentHash = index.hashOf(fileName, file);
 
-        if (head != null && currentHash.equals(head.getBlobs().get(fileName))) {
+        if (head != null && currentHash.equals(head.getBlob(fileName))) {
             index.revert(fileName);
         } else {
-            blob.save();
+            new Blob(fileName, file, currentHash).save();
             index.add(fileName, currentHash);
         }
         index.save();
@@ -93,8 +194,7 @@ public class Repository {
     public static void commit(String message, String parent2) {
         StagingArea index = StagingArea.load();
         if (index.isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException("No changes added to the commit.");
         }
 
         Commit parentCommit = getHeadCommit();
@@ -103,25 +203,29 @@ public class Repository {
             parentId = parentCommit.getId();
         }
 
-        Map<String, String> newBlobs = null;
-        if (parentCommit != null) {
-            newBlobs = new HashMap<>(parentCommit.getBlobs());
-        }
-
-        if (newBlobs != null) {
-            newBlobs.putAll(index.getAdded());
-        }
+        // fileName -> new blob id, or null if removed
+        Map<String, String> changes = new HashMap<>(index.getAdded());
         for (String fileName : index.getRemoved()) {
-            if (newBlobs != null) {
-                newBlobs.remove(fileName);
-            }
+            changes.put(fileName, null);
         }
+        String tree = parentCommit == null ? Tree.write(index.getAdded())
+                : Tree.update(parentCommit.getTree(), changes);
 
-        Commit currentCommit = new Commit(message, parentId, parent2, newBlobs);
+        CommitGraph graph = CommitGraph.load();
+        if (parentCommit != null) {
+            graph.add(parentCommit);
+        }
+        Commit currentCommit = new Commit(message, parentId, parent2, tree);
+        currentCommit.setGeneration(graph.nextGeneration(parentId, parent2));
         currentCommit.save();
+        graph.add(currentCommit);
+        CommitBitmaps.update(graph);
+        CommitIdIndex.add(currentCommit.getId());
+        MessageIndex.add(currentCommit);
 
         updateHeadCommit(currentCommit);
 
+        index.forgetStats(index.getRemoved());
         index.clear();
         index.save();
     }
@@ -132,12 +236,11 @@ public class Repository {
 
 
         boolean isStaged = index.isAdded(fileName);
-        boolean isTracked = (commit != null && commit.getBlobs().containsKey(fileName));
+        boolean isTracked = (commit != null && commit.tracks(fileName));
 
 
         if (!isStaged && !isTracked) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw new GitletException("No reason to remove the file.");
         }
 
         if (isStaged) {
@@ -153,13 +256,18 @@ public class Repository {
             }
         }
 
+        // removed or no longer staged, so not tracked either way
+        index.forgetStats(Collections.singleton(fileName));
         index.save();
     }
 
-    private static void printCommit(Commit commit) {
+    private static String formatDate(Date date) {
         java.text.SimpleDateFormat dateFormat =
                 new java.text.SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z", java.util.Locale.US);
+        return dateFormat.format(date);
+    }
 
+    private static void printCommit(Commit commit) {
         System.out.println("===");
         System.out.println("commit " + commit.getId());
 
@@ -169,67 +277,131 @@ public class Repository {
             System.out.println("Merge: " + p1 + " " + p2);
         }
 
-        System.out.println("Date: " + dateFormat.format(commit.getTimestamp()));
+        System.out.println("Date: " + formatDate(commit.getTimestamp()));
         System.out.println(commit.getMessage());
         System.out.println();
     }
 
-    public static void log() {
-        Commit commit = getHeadCommit();
-
-        while (commit != null) {
-            printCommit(commit);
+    /** Returns COMMIT printed as FORMAT, as described in LogOptions. */
+    private static String formatCommit(Commit commit, String format) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < format.length(); i += 1) {
+            char c = format.charAt(i);
+            if (c != '%' || i + 1 == format.length()) {
+                out.append(c);
+                continue;
+            }
+            i += 1;
+            switch (format.charAt(i)) {
+                case 'H':
+                    out.append(commit.getId());
+                    break;
+                case 'h':
+                    out.append(commit.getId(), 0, 7);
+                    break;
+                case 'P':
+                case 'p':
+                    int length = format.charAt(i) == 'P' ? 40 : 7;
+                    for (String parent : new String[]{commit.getParent(), commit.getParent2()}) {
+                        if (parent != null) {
+                            out.append(parent, 0, length).append(' ');
+                        }
+                    }
+                    if (commit.getParent() != null) {
+                        out.setLength(out.length() - 1);
+                    }
+                    break;
+                case 'a':
+                    if (format.startsWith("ad", i)) {
+                        out.append(formatDate(commit.getTimestamp()));
+                        i += 1;
+                    } else {
+                        out.append("%a");
+                    }
+                    break;
+                case 's':
+                    out.append(commit.getMessage());
+                    break;
+                case 'n':
+                    out.append('\n');
+                    break;
+                case '%':
+                    out.append('%');
+                    break;
+                default:
+                    out.append('%').append(format.charAt(i));
+            }
+        }
+        return out.toString();
+    }
 
-            if (commit.getParent() != null) {
-                String parentId = commit.getParent();
-                commit = readObject(join(OBJECTS_DIR, parentId), Commit.class);
+    /** Prints the commits of HISTORY that OPTIONS select. */
+    private static void printHistory(History history, LogOptions options) {
+        history.limitTime(options.since(), options.until());
+        for (int n = 0; n < options.limit() && history.hasNext(); n += 1) {
+            Commit commit = history.next();
+            if (options.format() == null) {
+                printCommit(commit);
             } else {
-                commit = null;
+                System.out.println(formatCommit(commit, options.format()));
             }
         }
     }
 
-    public static void globalLog() {
-        List<String> filenames = plainFilenamesIn(OBJECTS_DIR);
-        if (filenames == null) {
+    /** Prints the first-parent history of the head commit. */
+    public static void log(LogOptions options) {
+        Commit head = getHeadCommit();
+        if (head == null) {
             return;
         }
+        CommitGraph graph = CommitGraph.load();
+        printHistory(new History(graph, true, Bitmap.EMPTY, position(graph, head)), options);
+    }
 
-        for (String fileName : filenames) {
-            File file = join(OBJECTS_DIR, fileName);
+    /** Prints the commits reachable from revision TO but not from revision
+     *  FROM, newest first, as git log FROM..TO does.  Whatever FROM reaches
+     *  is left out of the walk from TO, and cuts it short. */
+    public static void log(String from, String to, LogOptions options) {
+        CommitGraph graph = CommitGraph.load();
+        int fromPos = position(graph, getRevision(from));
+        int toPos = position(graph, getRevision(to));
+        Bitmap excluded = CommitBitmaps.load(graph).reach(fromPos);
+        printHistory(new History(graph, false, excluded, toPos), options);
+    }
 
-            try {
-                Commit commit = readObject(file, Commit.class);
-                printCommit(commit);
-            } catch (IllegalArgumentException | ClassCastException ignored) {
-                //blob
-            }
+    /** Returns the position of COMMIT in GRAPH, for the commands that only
+     *  read and so never add to it.  Every commit is added as it is made,
+     *  and recover() rebuilds a graph whose last append was cut short. */
+    private static int position(CommitGraph graph, Commit commit) {
+        int pos = graph.indexOf(commit.getId());
+        if (pos == CommitGraph.NONE) {
+            throw new IllegalArgumentException("commit-graph lacks " + commit.getId());
         }
+        return pos;
     }
 
+    /** Prints every commit, newest first, merging the histories of all
+     *  the commits no other commit descends from. */
+    public static void globalLog(LogOptions options) {
+        CommitGraph graph = CommitGraph.load();
+        printHistory(new History(graph, false, Bitmap.EMPTY, History.tips(graph)), options);
+    }
 
-    public static void find(String message) {
-        List<String> filenames = plainFilenamesIn(OBJECTS_DIR);
-        if (filenames == null) {
-            return;
-        }
 
-        boolean found = false;
+    public static void find(String message) {
+        printFound(MessageIndex.find(message));
+    }
 
-        for (String fileName : filenames) {
-            File file = join(OBJECTS_DIR, fileName);
+    /** Prints the ids of the commits whose message contains WORD. */
+    public static void findWord(String word) {
+        printFound(MessageIndex.grep(word));
+    }
 
-            try {
-                Commit commit = readObject(file, Commit.class);
-                if (commit.getMessage().equals(message)) {
-                    System.out.println(commit.getId());
-                    found = true;
-                }
-            } catch (IllegalArgumentException | ClassCastException ignored) {
-                //blob
-            }
+    private static void printFound(List<String> commitIds) {
+        for (String commitId : commitIds) {
+            System.out.println(commitId);
         }
-        if (!found) {
+        if (commitIds.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -239,21 +411,14 @@ public class Repository {
         Commit headCommit = getHeadCommit();
         Map<String, String> headBlobs =
                 (headCommit != null) ? headCommit.getBlobs() : new HashMap<>();
-        List<String> workingFiles = plainFilenamesIn(CWD);
-        if (workingFiles == null) {
-            workingFiles = new ArrayList<>();
-        }
+        List<String> workingFiles = WorkingTree.list();
         System.out.println("=== Branches ===");
-        String currentBranch = readContentsAsString(HEAD_FILE);
-        List<String> branchNames = plainFilenamesIn(HEADS_DIR);
-        if (branchNames != null) {
-            Collections.sort(branchNames);
-            for (String name : branchNames) {
-                if (name.equals(currentBranch)) {
-                    System.out.println("*" + name);
-                } else {
-                    System.out.println(name);
-                }
+        String currentBranch = Refs.currentBranch();
+        for (String name : Refs.branches()) {
+            if (name.equals(currentBranch)) {
+                System.out.println("*" + name);
+            } else {
+                System.out.println(name);
             }
         }
         System.out.println();
@@ -271,11 +436,13 @@ public class Repository {
             System.out.println(fileName);
         }
         System.out.println();
+        Set<String> tracked = new HashSet<>(headBlobs.keySet());
+        tracked.addAll(index.getAdded().keySet());
+        Map<String, String> workingHashes = WorkingTree.hash(tracked, index);
         TreeSet<String> modifications = new TreeSet<>();
         for (String fileName : headBlobs.keySet()) {
-            File file = join(CWD, fileName);
-            if (file.exists()) {
-                String currentHash = new Blob(fileName, file).getId();
+            String currentHash = workingHashes.get(fileName);
+            if (currentHash != null) {
                 if (!index.getAdded().containsKey(fileName)
                         && !currentHash.equals(headBlobs.get(fileName))) {
                     modifications.add(fileName + " (modified)");
@@ -285,9 +452,8 @@ public class Repository {
             }
         }
         for (String fileName : index.getAdded().keySet()) {
-            File file = join(CWD, fileName);
-            if (file.exists()) {
-                String currentHash = new Blob(fileName, file).getId();
+            String currentHash = workingHashes.get(fileName);
+            if (currentHash != null) {
                 if (!currentHash.equals(index.getAdded().get(fileName))) {
                     modifications.add(fileName + " (modified)");
                 }
@@ -313,128 +479,132 @@ public class Repository {
             System.out.println(fileName);
         }
         System.out.println();
-    }
 
-    private static File getFile(Commit commit, String fileName) {
-        Map<String, String> blobs = commit.getBlobs();
-        if (blobs.containsKey(fileName)) {
-            return join(OBJECTS_DIR, blobs.get(fileName));
-        } else {
-            return null;
+        if (index.statsChanged()) {
+            StagingArea.saveStats(index);
         }
     }
 
+    /** Writes FILENAME as of COMMIT, which must track it, into the
+     *  working directory. */
+    private static void getFile(Commit commit, String fileName) {
+        ObjectStore.copyBlobTo(commit.getBlob(fileName), join(CWD, fileName));
+    }
+
     public static void checkout1(String fileName) {
         Commit commit = getHeadCommit();
 
-        if (commit == null || !commit.getBlobs().containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        if (commit == null || !commit.tracks(fileName)) {
+            throw new GitletException("File does not exist in that commit.");
         }
 
-        File blobFile = getFile(commit, fileName);
+        getFile(commit, fileName);
+    }
 
-        Blob b = readObject(blobFile, Blob.class);
+    /** Prints unified diffs of the files that differ between the commits
+     *  named in REVISIONS, each a branch, HEAD or a commit id as getRevision
+     *  takes it.  With one commit it is compared with the working
+     *  directory, and with none the head commit is.  Only files tracked by
+     *  the commit or staged for addition are compared with the working
+     *  directory, and files whose blob ids match are skipped unread. */
+    public static void diff(String... revisions) {
+        Commit from = getRevision(revisions.length > 0 ? revisions[0] : "");
+        OutputStream out = new BufferedOutputStream(System.out);
+        if (revisions.length == 2) {
+            Commit to = getRevision(revisions[1]);
+            for (String name : new TreeSet<>(Tree.diff(from.getTree(), to.getTree()))) {
+                UnifiedDiff.write(out, name, blobVersion(from.getBlob(name)),
+                        blobVersion(to.getBlob(name)));
+            }
+            return;
+        }
+        StagingArea index = StagingArea.load();
+        Set<String> tracked = new TreeSet<>(from.getBlobs().keySet());
+        tracked.addAll(index.getAdded().keySet());
+        Map<String, String> workingHashes = WorkingTree.hash(tracked, index);
+        for (String name : tracked) {
+            String workingHash = workingHashes.get(name);
+            if (safeEquals(from.getBlob(name), workingHash)) {
+                continue;
+            }
+            File file = join(CWD, name);
+            UnifiedDiff.write(out, name, blobVersion(from.getBlob(name)),
+                    workingHash == null ? null : () -> new FileInputStream(file));
+        }
+        if (index.statsChanged()) {
+            StagingArea.saveStats(index);
+        }
+    }
 
-        File target = join(CWD, fileName);
-        writeContents(target, (Object) b.getContent());
+    private static UnifiedDiff.Source blobVersion(String blobId) {
+        return blobId == null ? null : () -> ObjectStore.openBlob(blobId);
     }
 
+    /** Returns the commit whose id is, or uniquely starts with, COMMITID. */
     private static Commit getCommit(String commitId) {
         if (commitId == null) {
             return null;
         }
-        if (commitId.length() == 40) {
-            File commitFile = join(OBJECTS_DIR, commitId);
-            if (commitFile.exists()) {
-                try {
-                    return readObject(commitFile, Commit.class);
-                } catch (IllegalArgumentException e) {
-                    System.out.println("No commit with that id exists.");
-                    System.exit(0);
-                    return null;
-                }
-            }
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-            return null;
+        List<String> matches = CommitIdIndex.resolve(commitId, 2);
+        if (matches.size() > 1) {
+            throw new GitletException("Ambiguous commit id; use more characters.");
         }
-        List<String> allObjects = plainFilenamesIn(OBJECTS_DIR);
-        if (allObjects == null) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-            return null;
+        if (matches.isEmpty()) {
+            throw new GitletException("No commit with that id exists.");
         }
+        return readCommit(matches.get(0));
+    }
 
-        for (String objId : allObjects) {
-            if (objId.startsWith(commitId)) {
-                File objFile = join(OBJECTS_DIR, objId);
-                try {
-                    return readObject(objFile, Commit.class);
-                } catch (IllegalArgumentException | ClassCastException e) {
-                    //blob
-                }
-            }
+    /** Returns the commit named by REVISION: a branch, a commit id or an
+     *  abbreviation of one, or the head commit if it is empty or HEAD. */
+    private static Commit getRevision(String revision) {
+        if (revision.isEmpty() || revision.equals("HEAD")) {
+            return getHeadCommit();
         }
-        System.out.println("No commit with that id exists.");
-        System.exit(0);
-        return null;
+        String branchHead = Refs.branch(revision);
+        return branchHead != null ? readCommit(branchHead) : getCommit(revision);
     }
 
     public static void checkout2(String commitId, String fileName) {
         Commit commit = getCommit(commitId);
 
-        if (!commit.getBlobs().containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        if (!commit.tracks(fileName)) {
+            throw new GitletException("File does not exist in that commit.");
         }
 
-        File blobFile = getFile(commit, fileName);
-
-        Blob b = readObject(blobFile, Blob.class);
-
-        File target = join(CWD, fileName);
-        writeContents(target, (Object) b.getContent());
+        getFile(commit, fileName);
     }
 
     private static void hasUntracked(Commit targetCommit) {
         Commit currentCommit = getHeadCommit();
         StagingArea index = StagingArea.load();
-        List<String> workingFiles = plainFilenamesIn(CWD);
+        List<String> workingFiles = WorkingTree.list();
         Map<String, String> currentBlobs =
                 (currentCommit != null) ? currentCommit.getBlobs() : new HashMap<>();
 
-        if (workingFiles == null) {
-            return;
-        }
-
         for (String fileName : workingFiles) {
             boolean isTracked = currentBlobs.containsKey(fileName)
                     || index.getAdded().containsKey(fileName);
             if (!isTracked) {
                 if (targetCommit.getBlobs().containsKey(fileName)) {
-                    System.out.println("There is an untracked file in the way; "
+                    throw new GitletException("There is an untracked file in the way; "
                             + "delete it, or add and commit it first.");
-                    System.exit(0);
                 }
             }
         }
     }
 
     public static void checkout3(String branchName) {
-        String currentBranch = readContentsAsString(HEAD_FILE);
+        String currentBranch = Refs.currentBranch();
         if (branchName.equals(currentBranch)) {
-            System.out.println("No need to checkout the current branch.");
-            System.exit(0);
+            throw new GitletException("No need to checkout the current branch.");
         }
 
-        File targetBranch = join(HEADS_DIR, branchName);
-        if (!targetBranch.exists()) {
-            System.out.println("No such branch exists.");
-            System.exit(0);
+        String commitId = Refs.branch(branchName);
+        if (commitId == null) {
+            throw new GitletException("No such branch exists.");
         }
 
-        String commitId = readContentsAsString(targetBranch);
         Commit currentCommit = getHeadCommit();
         Commit targetCommit = getCommit(commitId);
 
@@ -443,14 +613,12 @@ public class Repository {
 
         Map<String, String> targetBlobs = targetCommit.getBlobs();
         for (Map.Entry<String, String> entry : targetBlobs.entrySet()) {
-            File blobFile = join(OBJECTS_DIR, entry.getValue());
-            Blob b = readObject(blobFile, Blob.class);
-            writeContents(join(CWD, entry.getKey()), (Object) b.getContent());
+            ObjectStore.copyBlobTo(entry.getValue(), join(CWD, entry.getKey()));
         }
 
         deleteFile(currentCommit, targetBlobs);
 
-        writeContents(HEAD_FILE, branchName);
+        Refs.setCurrentBranch(branchName);
     }
 
     private static void deleteFile(Commit currentCommit, Map<String, String> targetBlobs) {
@@ -464,35 +632,63 @@ public class Repository {
 
         StagingArea index = StagingArea.load();
         index.clear();
+        index.retainStats(targetBlobs.keySet());
         index.save();
     }
 
     public static void branch(String branchName) {
-        File newBranchFile = join(HEADS_DIR, branchName);
-        if (newBranchFile.exists()) {
-            System.out.println("A branch with that name already exists.");
-            System.exit(0);
+        if (Refs.hasBranch(branchName)) {
+            throw new GitletException("A branch with that name already exists.");
         }
         Commit headCommit = getHeadCommit();
         if (headCommit != null) {
-            writeContents(newBranchFile, headCommit.getId());
+            Refs.setBranch(branchName, headCommit.getId());
+        }
+    }
+
+    /** Lists the branches, each with its head commit and how many commits
+     *  it has that the current branch has not (ahead) and the other way
+     *  round (behind). */
+    public static void listBranches() {
+        CommitGraph graph = CommitGraph.load();
+        CommitBitmaps bitmaps = CommitBitmaps.load(graph);
+        String currentBranch = Refs.currentBranch();
+        Bitmap head = bitmaps.reach(position(graph, getHeadCommit()));
+        List<String> names = Refs.branches();
+        int width = 0;
+        for (String name : names) {
+            width = Math.max(width, name.length());
+        }
+        for (String name : names) {
+            Commit tip = readCommit(Refs.branch(name));
+            Bitmap reach = bitmaps.reach(position(graph, tip));
+            int ahead = reach.andNot(head).cardinality();
+            int behind = head.andNot(reach).cardinality();
+            StringBuilder line = new StringBuilder(name.equals(currentBranch) ? "* " : "  ");
+            line.append(name).append(" ".repeat(width - name.length() + 1));
+            line.append(tip.getId(), 0, 7).append(' ');
+            if (ahead > 0 && behind > 0) {
+                line.append("[ahead ").append(ahead).append(", behind ").append(behind).append("] ");
+            } else if (ahead > 0) {
+                line.append("[ahead ").append(ahead).append("] ");
+            } else if (behind > 0) {
+                line.append("[behind ").append(behind).append("] ");
+            }
+            System.out.println(line.append(tip.getMessage()));
         }
     }
 
     public static void rmBranch(String branchName) {
-        String currentBranch = readContentsAsString(HEAD_FILE);
+        String currentBranch = Refs.currentBranch();
         if (branchName.equals(currentBranch)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw new GitletException("Cannot remove the current branch.");
         }
 
-        File targetBranchFile = join(HEADS_DIR, branchName);
-        if (!targetBranchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (!Refs.hasBranch(branchName)) {
+            throw new GitletException("A branch with that name does not exist.");
         }
 
-        targetBranchFile.delete();
+        Refs.deleteBranch(branchName);
     }
 
     public static void reset(String commitId) {
@@ -503,37 +699,13 @@ public class Repository {
         for (Map.Entry<String, String> entry : targetBlobs.entrySet()) {
             String fileName = entry.getKey();
             String blobId = entry.getValue();
-            File blobFile = join(OBJECTS_DIR, blobId);
-            Blob b = readObject(blobFile, Blob.class);
-            writeContents(join(CWD, fileName), (Object) b.getContent());
+            ObjectStore.copyBlobTo(blobId, join(CWD, fileName));
         }
 
         Commit currentCommit = getHeadCommit();
         deleteFile(currentCommit, targetBlobs);
 
-        String currentBranchName = readContentsAsString(HEAD_FILE);
-        File branchFile = join(HEADS_DIR, currentBranchName);
-        writeContents(branchFile, targetCommit.getId());
-    }
-
-    private static Set<String> getAncestorIds(Commit commit) {
-        Set<String> ancestors = new HashSet<>();
-        Queue<Commit> queue = new LinkedList<>();
-        queue.add(commit);
-
-        while (!queue.isEmpty()) {
-            Commit c = queue.poll();
-            if (c != null && !ancestors.contains(c.getId())) {
-                ancestors.add(c.getId());
-                if (c.getParent() != null) {
-                    queue.add(getCommit(c.getParent()));
-                }
-                if (c.getParent2() != null) {
-                    queue.add(getCommit(c.getParent2()));
-                }
-            }
-        }
-        return ancestors;
+        Refs.setBranch(Refs.currentBranch(), targetCommit.getId());
     }
 
     public static void merge(String branchName) {
@@ -544,8 +716,8 @@ public class Repository {
 
         boolean encounteredConflict = false;
 
-        for (String fileName : ctx.allFileNames) {
-            boolean conflict = processOneFile(fileName, ctx);
+        for (Map.Entry<String, String[]> e : ctx.candidates.entrySet()) {
+            boolean conflict = processOneFile(e.getKey(), e.getValue(), ctx);
             if (conflict) {
                 encounteredConflict = true;
             }
@@ -561,10 +733,12 @@ public class Repository {
         }
     }
 
-    private static boolean processOneFile(String fileName, MergeContext ctx) {
-        String spHash = ctx.splitCommit.getBlobs().get(fileName);
-        String currHash = ctx.currentCommit.getBlobs().get(fileName);
-        String givenHash = ctx.targetCommit.getBlobs().get(fileName);
+    /** Merges FILENAME, whose blobs in the split point, the current and the
+     *  given commit are BLOBS, and returns true if it conflicts. */
+    private static boolean processOneFile(String fileName, String[] blobs, MergeContext ctx) {
+        String spHash = blobs[0];
+        String currHash = blobs[1];
+        String givenHash = blobs[2];
 
         boolean inSplit = spHash != null;
         boolean inCurr = currHash != null;
@@ -601,6 +775,9 @@ public class Repository {
         if (inSplit && !inCurr && inGiven && safeEquals(spHash, givenHash)) {
             return false;
         }
+        if (inCurr && inGiven) {
+            return mergeLines(fileName, spHash, currHash, givenHash, ctx.index);
+        }
         handleConflict(fileName, currHash, givenHash, ctx.index);
         return true;
     }
@@ -612,7 +789,8 @@ public class Repository {
         final Commit targetCommit;
         final Commit splitCommit;
         final String currentBranchName;
-        final Set<String> allFileNames;
+        /** fileName -> {split, current, given} blob ids */
+        final Map<String, String[]> candidates;
 
         MergeContext(StagingArea index, Commit curr, String tarId, Commit tar,
                      Commit split, String currName) {
@@ -623,16 +801,11 @@ public class Repository {
             this.splitCommit = split;
             this.currentBranchName = currName;
 
-            this.allFileNames = new HashSet<>();
-            if (curr != null) {
-                this.allFileNames.addAll(curr.getBlobs().keySet());
-            }
-            if (tar != null) {
-                this.allFileNames.addAll(tar.getBlobs().keySet());
-            }
-            if (split != null) {
-                this.allFileNames.addAll(split.getBlobs().keySet());
-            }
+            // A file the given branch left as it was at the split point, or
+            // changed the same way as the current one, keeps its current
+            // version; only the others are visited.
+            this.candidates = Tree.mergeCandidates(split.getTree(), curr.getTree(),
+                    tar.getTree());
         }
     }
 
@@ -642,79 +815,260 @@ public class Repository {
     private static MergeContext setupMerge(String branchName) {
         StagingArea index = StagingArea.load();
         if (!index.isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw new GitletException("You have uncommitted changes.");
         }
 
-        File branchFile = join(HEADS_DIR, branchName);
-        if (!branchFile.exists()) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        String targetCommitId = Refs.branch(branchName);
+        if (targetCommitId == null) {
+            throw new GitletException("A branch with that name does not exist.");
         }
 
-        String currentBranchName = readContentsAsString(HEAD_FILE);
+        String currentBranchName = Refs.currentBranch();
         if (branchName.equals(currentBranchName)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw new GitletException("Cannot merge a branch with itself.");
         }
 
         Commit currentCommit = getHeadCommit();
-        String targetCommitId = readContentsAsString(branchFile);
         Commit targetCommit = getCommit(targetCommitId);
 
         hasUntracked(targetCommit);
 
-        // BFS 找 Split Point
-        Set<String> currentAncestorIds = getAncestorIds(currentCommit);
-        Commit splitCommit = getSpCommit(targetCommit, currentAncestorIds);
-
         // Fast-forward 检查
-        if (splitCommit.getId().equals(targetCommitId)) {
+        CommitGraph graph = CommitGraph.load();
+        int current = graph.add(currentCommit);
+        int target = graph.add(targetCommit);
+        CommitBitmaps bitmaps = CommitBitmaps.load(graph);
+        if (bitmaps.isAncestor(target, current)) {
             System.out.println("Given branch is an ancestor of the current branch.");
             return null;
         }
-        if (currentCommit != null && splitCommit.getId().equals(currentCommit.getId())) {
+        if (bitmaps.isAncestor(current, target)) {
             checkout3(branchName);
             System.out.println("Current branch fast-forwarded.");
             return null;
         }
 
+        // 按代数 (generation) 找 Split Point
+        Commit splitCommit = getSpCommit(currentCommit, targetCommit);
+
         return new MergeContext(index, currentCommit, targetCommitId,
                 targetCommit, splitCommit, currentBranchName);
     }
 
-    private static Commit getSpCommit(Commit targetCommit, Set<String> currentAncestorIds) {
-        Commit splitCommit = null;
-        Queue<Commit> queue = new LinkedList<>();
-        Set<String> visited = new HashSet<>();
+    private static Commit getSpCommit(Commit currentCommit, Commit targetCommit) {
+        CommitGraph graph = CommitGraph.load();
+        int split = graph.mergeBase(graph.add(currentCommit), graph.add(targetCommit));
+        return split == CommitGraph.NONE ? null : readCommit(graph.id(split));
+    }
+
 
-        queue.add(targetCommit);
-        visited.add(targetCommit.getId());
+    /** Longest run of deltas a packed blob may need to be rebuilt. */
+    private static final int MAX_DELTA_DEPTH = 50;
+
+    /** Consolidates every blob, loose or already packed, into one new pack.
+     *  The versions of each file are stored newest first, each later one as
+     *  a delta against the version stored before it, so the contents that
+     *  checkout needs most often are never behind a delta chain. */
+    public static void pack() {
+        List<PackFile> oldPacks = new ArrayList<>(PackFile.all());
+        List<String> loose = ObjectStore.looseBlobIds();
+        long before = 0;
+        for (String id : loose) {
+            before += ObjectStore.looseBlobSize(id);
+        }
+        before += ObjectStore.chunkBytes();
+        for (PackFile p : oldPacks) {
+            before += p.byteSize();
+        }
+
+        // fileName -> its blobs, newest first.  Commits share the tree
+        // nodes of what they did not change, and each node is read once.
+        Map<String, List<String>> versions = new LinkedHashMap<>();
+        Set<String> seen = new HashSet<>();
+        Set<String> nodes = new HashSet<>();
+        CommitGraph graph = CommitGraph.load();
+        for (int i = graph.size() - 1; i >= 0; i -= 1) {
+            Tree.walk(readCommit(graph.id(i)).getTree(), nodes::add, (fileName, blob) -> {
+                if (seen.add(blob)) {
+                    versions.computeIfAbsent(fileName, k -> new ArrayList<>()).add(blob);
+                }
+            });
+        }
+        for (String id : ObjectStore.blobIds()) {
+            if (seen.add(id)) {
+                versions.computeIfAbsent("", k -> new ArrayList<>()).add(id);
+            }
+        }
 
-        while (!queue.isEmpty()) {
-            Commit commit = queue.poll();
-            if (currentAncestorIds.contains(commit.getId())) {
-                splitCommit = commit;
-                break;
+        // a pack that would pass PackFile.MAX_SIZE is finished and another
+        // begun, whose first version of a file is stored whole again
+        List<PackFile> packed = new ArrayList<>();
+        PackFile.Writer writer = new PackFile.Writer();
+        int deltas = 0;
+        for (Map.Entry<String, List<String>> e : versions.entrySet()) {
+            String baseId = null;
+            byte[] base = null;
+            int depth = 0;
+            for (String id : e.getValue()) {
+                byte[] content = ObjectStore.readBlobContent(id);
+                byte[] delta = null;
+                if (base != null && !e.getKey().isEmpty() && depth < MAX_DELTA_DEPTH) {
+                    delta = Delta.create(base, content);
+                }
+                if (delta != null && delta.length >= content.length) {
+                    delta = null;
+                }
+                if (!writer.fits(delta != null ? delta.length : content.length)
+                        && !writer.isEmpty()) {
+                    packed.add(writer.finish());
+                    writer = new PackFile.Writer();
+                    delta = null;
+                }
+                if (delta != null) {
+                    writer.addDelta(id, delta.length, baseId, delta);
+                    depth += 1;
+                    deltas += 1;
+                } else {
+                    writer.addFull(id, content);
+                    depth = 0;
+                }
+                baseId = id;
+                base = content;
+            }
+        }
+        packed.add(writer.finish());
+        Set<String> packedNames = new HashSet<>();
+        int blobs = 0;
+        long after = 0;
+        for (PackFile p : packed) {
+            packedNames.add(p.name());
+            blobs += p.size();
+            after += p.byteSize();
+        }
+
+        // the deletions are one update of the Journal, whose commit first
+        // forces the new pack and its index to disk
+        Journal.begin();
+        try {
+            for (PackFile p : oldPacks) {
+                if (!packedNames.contains(p.name())) {
+                    p.delete();
+                }
             }
-            List<String> parents = new ArrayList<>();
-            if (commit.getParent() != null) {
-                parents.add(commit.getParent());
+            for (String id : loose) {
+                ObjectStore.deleteLooseBlob(id);
             }
-            if (commit.getParent2() != null) {
-                parents.add(commit.getParent2());
+            ObjectStore.deleteChunks();
+            Journal.commit();
+        } catch (RuntimeException excp) {
+            Journal.abort();
+            throw excp;
+        }
+        PackFile.reload();
+        System.out.println("Packed " + blobs + " blobs (" + deltas + " deltas), "
+                + before + " -> " + after + " bytes.");
+    }
+
+    /** How long an unreachable object is kept, so that a commit dropped by
+     *  reset or rm-branch can still be checked out by its id for a while. */
+    private static final long PRUNE_GRACE = TimeUnit.DAYS.toMillis(14);
+
+    /** Deletes the loose commits, trees, blobs and chunks that no branch
+     *  and no staged file can reach, once they are older than PRUNE_GRACE,
+     *  or at once if PRUNENOW.  Reachable objects are marked in an
+     *  ObjectSet per kind of object.  Objects too young to go are marked
+     *  as well, so that nothing they refer to is deleted from under them.
+     *  Packed blobs are left to pack. */
+    public static void gc(boolean pruneNow) {
+        long start = System.nanoTime();
+        long cutoff = pruneNow ? Long.MAX_VALUE : System.currentTimeMillis() - PRUNE_GRACE;
+        ObjectSet commits = new ObjectSet(ObjectStore.commitIds());
+        ObjectSet trees = new ObjectSet(ObjectStore.treeIds());
+        ObjectSet blobs = new ObjectSet(ObjectStore.looseBlobIds());
+        ObjectSet chunks = new ObjectSet(ObjectStore.chunkIds());
+        Consumer<String> markBlob = id -> {
+            if (blobs.mark(id)) {
+                ObjectStore.chunksOf(id).forEach(chunks::mark);
             }
+        };
 
-            for (String pid : parents) {
-                if (!visited.contains(pid)) {
-                    visited.add(pid);
-                    queue.add(getCommit(pid));
+        Deque<String> stack = new ArrayDeque<>();
+        for (String branch : Refs.branches()) {
+            stack.push(Refs.branch(branch));
+        }
+        markRecent(commits, ObjectStore::commitFile, cutoff, stack::push);
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!commits.mark(id)) {
+                continue;
+            }
+            Commit commit = readCommit(id);
+            for (String pid : new String[]{commit.getParent(), commit.getParent2()}) {
+                if (pid != null) {
+                    stack.push(pid);
                 }
             }
+            Tree.walk(commit.getTree(), trees::mark, markBlob);
+        }
+        markRecent(trees, ObjectStore::treeFile, cutoff,
+                id -> Tree.walk(id, trees::mark, markBlob));
+        StagingArea.load().getAdded().values().forEach(markBlob);
+        markRecent(blobs, ObjectStore::blobFile, cutoff, markBlob);
+        markRecent(chunks, ObjectStore::chunkFile, cutoff, chunks::mark);
+
+        // drop the swept commits from the indexes first, so that they never
+        // name a missing commit
+        if (commits.markedCount() < commits.size()) {
+            List<String> kept = new ArrayList<>();
+            for (int i = 0; i < commits.size(); i += 1) {
+                if (commits.isMarked(i)) {
+                    kept.add(commits.id(i));
+                }
+            }
+            CommitGraph.rebuild(kept);
+            CommitBitmaps.rebuild(CommitGraph.load());
+            CommitIdIndex.rebuild();
+            MessageIndex.rebuild(kept);
+        } else {
+            CommitIdIndex.compact();
+        }
+        long bytes = sweep(commits, ObjectStore::commitFile)
+                + sweep(trees, ObjectStore::treeFile)
+                + sweep(blobs, ObjectStore::blobFile)
+                + sweep(chunks, ObjectStore::chunkFile);
+        System.out.println("Removed " + (commits.size() - commits.markedCount()) + " commits, "
+                + (trees.size() - trees.markedCount()) + " trees, "
+                + (blobs.size() - blobs.markedCount()) + " blobs and "
+                + (chunks.size() - chunks.markedCount()) + " chunks, "
+                + bytes + " bytes, in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+    }
+
+    /** Passes each object of SET that is not marked yet and whose FILE was
+     *  modified after CUTOFF to MARK. */
+    private static void markRecent(ObjectSet set, Function<String, File> file, long cutoff,
+                                   Consumer<String> mark) {
+        for (int i = 0; i < set.size(); i += 1) {
+            if (!set.isMarked(i) && file.apply(set.id(i)).lastModified() > cutoff) {
+                mark.accept(set.id(i));
+            }
         }
-        return splitCommit;
     }
 
+    /** Deletes the FILE of each object of SET that is not marked, and the
+     *  fan-out directories left empty, and returns the bytes freed. */
+    private static long sweep(ObjectSet set, Function<String, File> file) {
+        long bytes = 0;
+        for (int i = 0; i < set.size(); i += 1) {
+            if (!set.isMarked(i)) {
+                File f = file.apply(set.id(i));
+                bytes += f.length();
+                f.delete();
+                f.getParentFile().delete();
+            }
+        }
+        return bytes;
+    }
 
     private static boolean safeEquals(String a, String b) {
         if (a == null && b == null) {
@@ -726,21 +1080,33 @@ public class Repository {
         return a.equals(b);
     }
 
+    /** Merges the versions CURRHASH and GIVENHASH of FILENAME line by line
+     *  against SPHASH, null if neither had it at the split point, stages
+     *  the result and returns true if some lines conflict. */
+    private static boolean mergeLines(String fileName, String spHash, String currHash,
+                                      String givenHash, StagingArea index) {
+        byte[] base = spHash == null ? new byte[0] : ObjectStore.readBlobContent(spHash);
+        Diff3.Result merged = Diff3.merge(base, ObjectStore.readBlobContent(currHash),
+                ObjectStore.readBlobContent(givenHash));
+        File targetFile = join(CWD, fileName);
+        writeContents(targetFile, merged.content);
+        Blob mergedBlob = new Blob(fileName, targetFile);
+        mergedBlob.save();
+        index.add(fileName, mergedBlob.getId());
+        return merged.conflict;
+    }
+
     private static void handleConflict(String fileName, String currHash,
                                        String givenHash, StagingArea index) {
         String currContent = "";
         String givenContent = "";
 
         if (currHash != null) {
-            File f = join(OBJECTS_DIR, currHash);
-            Blob b = readObject(f, Blob.class);
-            currContent = new String(b.getContent());
+            currContent = new String(ObjectStore.readBlobContent(currHash));
         }
 
         if (givenHash != null) {
-            File f = join(OBJECTS_DIR, givenHash);
-            Blob b = readObject(f, Blob.class);
-            givenContent = new String(b.getContent());
+            givenContent = new String(ObjectStore.readBlobContent(givenHash));
         }
 
         String content = "<<<<<<< HEAD\n" + currContent + "=======\n" + givenContent + ">>>>>>>\n";
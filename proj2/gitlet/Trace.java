@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counts and times what gitlet spends its time on, when the GITLET_TRACE
+ *  environment variable asks for it: with "1", a table is printed on
+ *  standard error once each command is done, and with "json", the same
+ *  figures as one JSON object.  Each probe records how often it ran, the
+ *  bytes it read, wrote or hashed, and the nanoseconds spent in it,
+ *  counting the probes it calls; the "X.execute" probe times Command X.
+ *
+ *  Probes go around a hot path as
+ *      long start = Trace.start();
+ *      ...
+ *      Trace.end("name", start, bytes);
+ *  and do nothing, not even read the clock, unless ENABLED.
+ *  @author camvan
+ */
+public class Trace {
+    private static final String MODE = System.getenv("GITLET_TRACE");
+    public static final boolean ENABLED = MODE != null && !MODE.isEmpty() && !MODE.equals("0");
+    private static final boolean JSON = "json".equals(MODE);
+
+    /** name -> {calls, bytes, nanoseconds}; probes may run on several threads */
+    private static final Map<String, LongAdder[]> PROBES = new ConcurrentHashMap<>();
+
+    /** Returns the time to pass to end, or 0 if not ENABLED. */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /** Records a run of probe NAME, begun at START, that handled BYTES. */
+    public static void end(String name, long start, long bytes) {
+        if (!ENABLED) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        LongAdder[] probe = PROBES.computeIfAbsent(name,
+                k -> new LongAdder[]{new LongAdder(), new LongAdder(), new LongAdder()});
+        probe[0].increment();
+        probe[1].add(bytes);
+        probe[2].add(elapsed);
+    }
+
+    /** Prints the figures recorded since the last report to OUT, the
+     *  probes that took longest first, and starts counting afresh. */
+    public static void report(PrintStream out) {
+        List<Map.Entry<String, long[]>> probes = new ArrayList<>();
+        for (String name : new ArrayList<>(PROBES.keySet())) {
+            LongAdder[] probe = PROBES.remove(name);
+            probes.add(Map.entry(name, new long[]{probe[0].sum(), probe[1].sum(), probe[2].sum()}));
+        }
+        probes.sort((a, b) -> Long.compare(b.getValue()[2], a.getValue()[2]));
+        StringBuilder text = new StringBuilder();
+        if (JSON) {
+            text.append('{');
+            for (Map.Entry<String, long[]> e : probes) {
+                if (text.length() > 1) {
+                    text.append(',');
+                }
+                long[] v = e.getValue();
+                text.append('"').append(e.getKey()).append("\":{\"calls\":").append(v[0])
+                        .append(",\"bytes\":").append(v[1]).append(",\"ns\":").append(v[2])
+                        .append('}');
+            }
+            text.append('}');
+        } else {
+            text.append(String.format("%-28s %10s %14s %12s", "probe", "calls", "bytes", "ms"));
+            for (Map.Entry<String, long[]> e : probes) {
+                long[] v = e.getValue();
+                text.append(String.format("%n%-28s %10d %14d %12.3f", e.getKey(), v[0], v[1],
+                        v[2] / 1e6));
+            }
+        }
+        out.println(text);
+        out.flush();
+    }
+}
@@ -0,0 +1,233 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Writes the differences between two versions of a file as a unified
+ *  diff, without holding either version in memory.  Each version is read
+ *  twice: once to reduce each of its lines to a 64-bit hash, which is all
+ *  Diff compares, and once, in step with the edits coming out of Diff, to
+ *  copy the lines of each hunk to the output.  A hunk is
+ *  written and flushed as soon as the next edit is too far from it to be
+ *  merged into it.
+ *  @author camvan
+ */
+class UnifiedDiff {
+    /** Unchanged lines shown around each change. */
+    private static final int CONTEXT = 3;
+    /** Bytes at the start of a file searched for a NUL, which marks it as
+     *  binary. */
+    private static final int BINARY_PROBE = 8000;
+
+    /** Something that can be read from its start more than once. */
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private final OutputStream out;
+    private final Lines oldLines;
+    private final Lines newLines;
+    private final int oldCount;
+    /** the edits of the hunk being gathered */
+    private final List<Diff.Edit> hunk = new ArrayList<>();
+
+    private UnifiedDiff(OutputStream out, Lines oldLines, int oldCount, Lines newLines) {
+        this.out = out;
+        this.oldLines = oldLines;
+        this.oldCount = oldCount;
+        this.newLines = newLines;
+    }
+
+    /** Writes to OUT the differences of NAME from OLDVERSION to NEWVERSION,
+     *  either of which is null if the file does not exist there. */
+    static void write(OutputStream out, String name, Source oldVersion, Source newVersion) {
+        try {
+            print(out, "diff --git a/" + name + " b/" + name + "\n");
+            Numbered a = Numbered.of(oldVersion);
+            Numbered b = Numbered.of(newVersion);
+            if (a.binary || b.binary) {
+                print(out, "Binary files " + label("a/", name, oldVersion) + " and "
+                        + label("b/", name, newVersion) + " differ\n");
+                out.flush();
+                return;
+            }
+            print(out, "--- " + label("a/", name, oldVersion) + "\n");
+            print(out, "+++ " + label("b/", name, newVersion) + "\n");
+            try (Lines oldLines = new Lines(oldVersion); Lines newLines = new Lines(newVersion)) {
+                UnifiedDiff diff = new UnifiedDiff(out, oldLines, a.lines.length, newLines);
+                Diff.diff(a.lines, b.lines, diff::add);
+                diff.writeHunk();
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static String label(String prefix, String name, Source version) {
+        return version == null ? "/dev/null" : prefix + name;
+    }
+
+    private static void print(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void add(Diff.Edit edit) {
+        if (!hunk.isEmpty() && edit.aStart - hunk.get(hunk.size() - 1).aEnd > 2 * CONTEXT) {
+            writeHunk();
+        }
+        hunk.add(edit);
+    }
+
+    /** Writes the hunk gathered so far, if any. */
+    private void writeHunk() {
+        if (hunk.isEmpty()) {
+            return;
+        }
+        Diff.Edit first = hunk.get(0);
+        Diff.Edit last = hunk.get(hunk.size() - 1);
+        int aStart = Math.max(0, first.aStart - CONTEXT);
+        int aEnd = Math.min(oldCount, last.aEnd + CONTEXT);
+        int bStart = first.bStart - (first.aStart - aStart);
+        int bEnd = last.bEnd + (aEnd - last.aEnd);
+        try {
+            print(out, "@@ -" + range(aStart, aEnd) + " +" + range(bStart, bEnd) + " @@\n");
+            oldLines.skipTo(aStart);
+            newLines.skipTo(bStart);
+            for (Diff.Edit e : hunk) {
+                context(e.aStart);
+                for (int i = e.aStart; i < e.aEnd; i += 1) {
+                    oldLines.copy(out, '-');
+                }
+                for (int i = e.bStart; i < e.bEnd; i += 1) {
+                    newLines.copy(out, '+');
+                }
+            }
+            context(aEnd);
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        hunk.clear();
+    }
+
+    /** Copies the unchanged lines up to old line END. */
+    private void context(int end) throws IOException {
+        while (oldLines.line < end) {
+            oldLines.copy(out, ' ');
+            newLines.skipTo(newLines.line + 1);
+        }
+    }
+
+    /** Returns lines [START, END) as a unified range: the first line and
+     *  the count, which is left out if 1; an empty range starts at the line
+     *  before it. */
+    private static String range(int start, int end) {
+        if (end - start == 1) {
+            return String.valueOf(start + 1);
+        }
+        return (end == start ? start : start + 1) + "," + (end - start);
+    }
+
+    /** A version of a file as the hashes of its lines. */
+    private static class Numbered {
+        final long[] lines;
+        final boolean binary;
+
+        private Numbered(long[] lines, boolean binary) {
+            this.lines = lines;
+            this.binary = binary;
+        }
+
+        static Numbered of(Source version) throws IOException {
+            if (version == null) {
+                return new Numbered(new long[0], false);
+            }
+            long[] lines = new long[64];
+            int count = 0;
+            boolean binary = false;
+            long offset = 0;
+            try (InputStream in = new BufferedInputStream(version.open())) {
+                long hash = 0xcbf29ce484222325L;
+                boolean open = false;
+                for (int c = in.read(); c >= 0; c = in.read()) {
+                    if (c == 0 && offset < BINARY_PROBE) {
+                        binary = true;
+                    }
+                    offset += 1;
+                    // FNV-1a
+                    hash = (hash ^ c) * 0x100000001b3L;
+                    open = true;
+                    if (c == '\n') {
+                        lines = put(lines, count, hash);
+                        count += 1;
+                        hash = 0xcbf29ce484222325L;
+                        open = false;
+                    }
+                }
+                if (open) {
+                    lines = put(lines, count, hash);
+                    count += 1;
+                }
+            }
+            return new Numbered(Arrays.copyOf(lines, count), binary);
+        }
+
+        private static long[] put(long[] lines, int i, long hash) {
+            if (i == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            lines[i] = hash;
+            return lines;
+        }
+    }
+
+    /** A version of a file read line by line, from the start. */
+    private static class Lines implements AutoCloseable {
+        private final InputStream in;
+        /** number of the next line */
+        int line;
+
+        Lines(Source version) throws IOException {
+            this.in = version == null ? InputStream.nullInputStream()
+                    : new BufferedInputStream(version.open());
+        }
+
+        /** Skips ahead to line N. */
+        void skipTo(int n) throws IOException {
+            for (; line < n; line += 1) {
+                int c = in.read();
+                while (c >= 0 && c != '\n') {
+                    c = in.read();
+                }
+            }
+        }
+
+        /** Writes the next line to OUT after PREFIX. */
+        void copy(OutputStream out, char prefix) throws IOException {
+            out.write(prefix);
+            int c = in.read();
+            for (; c >= 0; c = in.read()) {
+                out.write(c);
+                if (c == '\n') {
+                    break;
+                }
+            }
+            if (c < 0) {
+                print(out, "\n\\ No newline at end of file\n");
+            }
+            line += 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package gitlet;
+
+import gitlet.models.StagingArea;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Concurrent scans of the working directory for status and the
+ *  untracked-file checks.  Stat calls and hashing are spread over a
+ *  fork-join pool of PARALLELISM threads; results are always returned
+ *  sorted, so output does not depend on scheduling.
+ *
+ *  The parallelism is taken from the gitlet.parallelism system property or
+ *  the GITLET_PARALLELISM environment variable, and defaults to the number
+ *  of available processors.  A parallelism of 1 scans on the calling thread.
+ *  @author camvan
+ */
+class WorkingTree {
+    static final int PARALLELISM = parallelism();
+    /** Files per task below which a task does its share itself. */
+    private static final int THRESHOLD = 32;
+
+    private static int parallelism() {
+        String value = System.getProperty("gitlet.parallelism",
+                System.getenv("GITLET_PARALLELISM"));
+        try {
+            if (value != null) {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            }
+        } catch (NumberFormatException ignored) {
+            //use the default
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Returns the names of all plain files in the working directory, in
+     *  lexicographic order, like plainFilenamesIn(CWD). */
+    static List<String> list() {
+        String[] names = Repository.CWD.list();
+        if (names == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(run(new Scan(names, 0, names.length, null)).keySet());
+    }
+
+    /** Returns fileName -> SHA-1 for each of FILENAMES that exists in the
+     *  working directory, hashed through the stat cache of INDEX. */
+    static SortedMap<String, String> hash(Collection<String> fileNames, StagingArea index) {
+        String[] names = fileNames.toArray(new String[0]);
+        return run(new Scan(names, 0, names.length, index));
+    }
+
+    private static SortedMap<String, String> run(Scan scan) {
+        if (PARALLELISM == 1 || scan.to - scan.from <= THRESHOLD) {
+            return scan.compute();
+        }
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            return pool.invoke(scan);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Maps each name in NAMES[FROM..TO) that is a plain file to its SHA-1
+     *  as hashed through INDEX, or to "" if there is no INDEX. */
+    private static class Scan extends RecursiveTask<SortedMap<String, String>> {
+        /** Never serialized; RecursiveTask is Serializable all the same. */
+        private static final long serialVersionUID = 3520065065190254551L;
+        private final String[] names;
+        private final int from;
+        private final int to;
+        private final StagingArea index;
+
+        Scan(String[] names, int from, int to, StagingArea index) {
+            this.names = names;
+            this.from = from;
+            this.to = to;
+            this.index = index;
+        }
+
+        @Override
+        protected SortedMap<String, String> compute() {
+            if (to - from > THRESHOLD && getPool() != null) {
+                int mid = (from + to) >>> 1;
+                Scan left = new Scan(names, from, mid, index);
+                left.fork();
+                SortedMap<String, String> result = new Scan(names, mid, to, index).compute();
+                result.putAll(left.join());
+                return result;
+            }
+            SortedMap<String, String> result = new TreeMap<>();
+            for (int i = from; i < to; i += 1) {
+                File file = Utils.join(Repository.CWD, names[i]);
+                if (file.isFile()) {
+                    result.put(names[i], index == null ? "" : index.hashOf(names[i], file));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package gitlet.commands;
 
+import gitlet.GitletException;
 import gitlet.Repository;
 
 import static gitlet.Utils.join;
@@ -19,8 +20,7 @@ public class AddCommand implements Command {
         hasDir();
         validateNumArgs(args, 2);
         if (!join(Repository.CWD, fileName).exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+            throw new GitletException("File does not exist.");
         }
         Repository.add(fileName);
     }
@@ -0,0 +1,17 @@
+package gitlet.commands;
+
+import gitlet.Batch;
+
+public class BatchCommand implements Command {
+    private final String[] args;
+
+    public BatchCommand(String[] args) {
+        this.args = args;
+    }
+
+    @Override
+    public void execute() {
+        validateNumArgs(args, 1);
+        Batch.run(System.in);
+    }
+}
@@ -3,19 +3,26 @@ package gitlet.commands;
 import gitlet.Repository;
 
 public class BranchCommand implements Command {
-    private final String branchName;
     private final String[] args;
 
 
     public BranchCommand(String[] args) {
         this.args = args;
-        this.branchName = args[1];
     }
 
     @Override
     public void execute() {
         hasDir();
         validateNumArgs(args, 2);
-        Repository.branch(branchName);
+        if (args[1].equals("-v")) {
+            Repository.listBranches();
+            return;
+        }
+        Repository.branch(args[1]);
+    }
+
+    @Override
+    public boolean readOnly() {
+        return args.length == 2 && args[1].equals("-v");
     }
 }
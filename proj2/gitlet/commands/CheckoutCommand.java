@@ -1,5 +1,6 @@
 package gitlet.commands;
 
+import gitlet.GitletException;
 import gitlet.Repository;
 
 public class CheckoutCommand implements Command {
@@ -19,8 +20,7 @@ public class CheckoutCommand implements Command {
         } else if (args.length == 2 && !args[1].equals("--")) {
             Repository.checkout3(args[1]);
         } else {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
     }
 }
@@ -1,22 +1,32 @@
 package gitlet.commands;
 
+import gitlet.GitletException;
 import gitlet.Repository;
 
 public interface Command {
 
     void execute();
 
+    /** Returns true if this command only reads the repository, so that it
+     *  can run while other processes read it too. */
+    default boolean readOnly() {
+        return false;
+    }
+
+    /** Returns false if this command does not lock the repository at all. */
+    default boolean locksRepository() {
+        return true;
+    }
+
     default void validateNumArgs(String[] args, int n) {
         if (args.length != n) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
     }
 
     default void hasDir() {
         if (!Repository.GITLET_DIR.exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw new GitletException("Not in an initialized Gitlet directory.");
         }
     }
 }
@@ -1,5 +1,6 @@
 package gitlet.commands;
 
+import gitlet.GitletException;
 import gitlet.Repository;
 
 public class CommitCommand implements Command {
@@ -13,8 +14,7 @@ public class CommitCommand implements Command {
     public void execute() {
         hasDir();
         if (args.length < 2 || args[1].isEmpty()) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw new GitletException("Please enter a commit message.");
         }
         validateNumArgs(args, 2);
         Repository.commit(args[1], null);
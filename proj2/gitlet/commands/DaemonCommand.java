@@ -0,0 +1,28 @@
+package gitlet.commands;
+
+import gitlet.Daemon;
+
+public class DaemonCommand implements Command {
+    private final String[] args;
+
+    public DaemonCommand(String[] args) {
+        this.args = args;
+    }
+
+    @Override
+    public void execute() {
+        hasDir();
+        if (args.length == 2 && args[1].equals("stop")) {
+            Daemon.stop();
+            return;
+        }
+        validateNumArgs(args, 1);
+        Daemon.serve();
+    }
+
+    /** The daemon locks the repository for each request it serves. */
+    @Override
+    public boolean locksRepository() {
+        return false;
+    }
+}
@@ -0,0 +1,28 @@
+package gitlet.commands;
+
+import gitlet.GitletException;
+import gitlet.Repository;
+
+import java.util.Arrays;
+
+public class DiffCommand implements Command {
+    private final String[] args;
+
+    public DiffCommand(String[] args) {
+        this.args = args;
+    }
+
+    @Override
+    public void execute() {
+        hasDir();
+        if (args.length > 3) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Repository.diff(Arrays.copyOfRange(args, 1, args.length));
+    }
+
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
+}
@@ -11,7 +11,16 @@ public class FindCommand implements Command {
     @Override
     public void execute() {
         hasDir();
+        if (args.length == 3 && args[1].equals("--grep")) {
+            Repository.findWord(args[2]);
+            return;
+        }
         validateNumArgs(args, 2);
         Repository.find(args[1]);
     }
+
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
 }
@@ -0,0 +1,24 @@
+package gitlet.commands;
+
+import gitlet.GitletException;
+import gitlet.Repository;
+
+public class GcCommand implements Command {
+    private final String[] args;
+
+    public GcCommand(String[] args) {
+        this.args = args;
+    }
+
+    @Override
+    public void execute() {
+        hasDir();
+        if (args.length == 2 && !args[1].equals("--prune=now")) {
+            throw new GitletException("Incorrect operands.");
+        }
+        if (args.length != 2) {
+            validateNumArgs(args, 1);
+        }
+        Repository.gc(args.length == 2);
+    }
+}
@@ -1,5 +1,7 @@
 package gitlet.commands;
 
+import gitlet.GitletException;
+import gitlet.LogOptions;
 import gitlet.Repository;
 
 public class GlobalLogCommand implements Command {
@@ -11,7 +13,15 @@ public class GlobalLogCommand implements Command {
     @Override
     public void execute() {
         hasDir();
-        validateNumArgs(args, 1);
-        Repository.globalLog();
+        LogOptions options = new LogOptions(args, 1);
+        if (!options.operands().isEmpty()) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Repository.globalLog(options);
+    }
+
+    @Override
+    public boolean readOnly() {
+        return true;
     }
 }
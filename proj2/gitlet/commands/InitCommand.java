@@ -1,5 +1,6 @@
 package gitlet.commands;
 
+import gitlet.GitletException;
 import gitlet.Repository;
 
 public class InitCommand implements Command {
@@ -12,9 +13,8 @@ public class InitCommand implements Command {
     public void execute() {
         validateNumArgs(args, 1);
         if (Repository.GITLET_DIR.exists()) {
-            System.out.println("A Gitlet version-control system "
+            throw new GitletException("A Gitlet version-control system "
                     + "already exists in the current directory.");
-            System.exit(0);
         }
         Repository.init();
     }
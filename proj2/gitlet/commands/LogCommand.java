@@ -1,5 +1,7 @@
 package gitlet.commands;
 
+import gitlet.GitletException;
+import gitlet.LogOptions;
 import gitlet.Repository;
 
 public class LogCommand implements Command {
@@ -12,7 +14,21 @@ public class LogCommand implements Command {
     @Override
     public void execute() {
         hasDir();
-        validateNumArgs(args, 1);
-        Repository.log();
+        LogOptions options = new LogOptions(args, 1);
+        if (options.operands().isEmpty()) {
+            Repository.log(options);
+            return;
+        }
+        String range = options.operands().get(0);
+        int dots = range.indexOf("..");
+        if (options.operands().size() != 1 || dots < 0) {
+            throw new GitletException("Incorrect operands.");
+        }
+        Repository.log(range.substring(0, dots), range.substring(dots + 2), options);
+    }
+
+    @Override
+    public boolean readOnly() {
+        return true;
     }
 }
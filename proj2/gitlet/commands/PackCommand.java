@@ -0,0 +1,18 @@
+package gitlet.commands;
+
+import gitlet.Repository;
+
+public class PackCommand implements Command {
+    private final String[] args;
+
+    public PackCommand(String[] args) {
+        this.args = args;
+    }
+
+    @Override
+    public void execute() {
+        hasDir();
+        validateNumArgs(args, 1);
+        Repository.pack();
+    }
+}
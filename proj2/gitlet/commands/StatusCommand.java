@@ -15,4 +15,9 @@ public class StatusCommand implements Command {
         validateNumArgs(args, 1);
         Repository.status();
     }
+
+    @Override
+    public boolean readOnly() {
+        return true;
+    }
 }
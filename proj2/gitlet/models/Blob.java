@@ -1,21 +1,36 @@
 package gitlet.models;
 
-import gitlet.Repository;
+import gitlet.store.ObjectStore;
 
 import java.io.File;
 import java.io.Serializable;
 import static gitlet.Utils.*;
 
+/** A version of a file's contents, identified by the SHA-1 of its bytes.
+ *  The contents are never held in memory: the id is hashed and the file
+ *  is copied into the object store by streaming it from FILE. */
 public class Blob implements Serializable {
+    /** Pinned so blobs serialized by older versions still load. */
+    private static final long serialVersionUID = -8383623788013207282L;
 
     private final String fileName;
+    /** Only set on blobs read back from the serialized format that older
+     *  versions stored; new blobs are stored raw by ObjectStore. */
     private final byte[] content;
     private final String id;
+    /** The file this blob was hashed from. */
+    private final transient File file;
 
     public Blob(String fileName, File file) {
+        this(fileName, file, sha1(file));
+    }
+
+    /** A blob of FILE whose contents are already known to hash to ID. */
+    public Blob(String fileName, File file, String id) {
         this.fileName = fileName;
-        this.content = readContents(file);
-        this.id = sha1((Object) content);
+        this.file = file;
+        this.content = null;
+        this.id = id;
     }
 
     public String getId() {
@@ -30,8 +45,11 @@ public class Blob implements Serializable {
         return fileName;
     }
 
+    public File getFile() {
+        return file;
+    }
+
     public void save() {
-        File blobFile = join(Repository.OBJECTS_DIR, id);
-        writeObject(blobFile, this);
+        ObjectStore.writeBlob(this);
     }
 }
@@ -1,15 +1,21 @@
 package gitlet.models;
 
-import gitlet.Repository;
+import gitlet.store.Codec;
+import gitlet.store.ObjectStore;
 
-import java.io.File;
 import java.io.Serializable;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
 
 import static gitlet.Utils.*;
 
 public class Commit implements Serializable {
+    /** Pinned so commits written before generation numbers still load. */
+    private static final long serialVersionUID = 6166641577350783441L;
+    /** Tag byte and current version of the encoded form. */
+    private static final int TAG = 'C';
+    private static final int VERSION = 2;
     /** The message of this Commit. */
     private final String message;
     /** The submit date of this Commit. */
@@ -17,36 +23,99 @@ public class Commit implements Serializable {
     /** The parent of this Commit. */
     private final String parent;
     private final String parent2;
-    /** fileName -> blob's SHA-1 */
+    /** fileName -> blob's SHA-1.  Stored inline by older versions; loaded
+     *  from the tree on first use otherwise. */
     Map<String, String> blobs;
+    /** Id of the Tree of this commit's files; null in commits written
+     *  before trees until ObjectStore.migrate() stores one. */
+    private String tree;
+    /** 1 + the largest generation of its parents; 0 if never computed. */
+    private int generation;
 
 
     private  String id;
 
 
-    public Commit(String message, String parent, String parent2, Map<String, String> blobs) {
+    /** A commit of the files in TREE. */
+    public Commit(String message, String parent, String parent2, String tree) {
         this.message = message;
         this.parent = parent;
         this.parent2 = parent2;
-        this.blobs = blobs;
+        this.tree = tree;
         this.timestamp = new Date();
         this.id = generateId();
     }
 
+    private Commit(String id, String message, String parent, String parent2, Date timestamp,
+                   Map<String, String> blobs, String tree, int generation) {
+        this.id = id;
+        this.message = message;
+        this.parent = parent;
+        this.parent2 = parent2;
+        this.timestamp = timestamp;
+        this.blobs = blobs;
+        this.tree = tree;
+        this.generation = generation;
+    }
+
+    /** Returns this commit in the Codec format: its id, message, parents,
+     *  timestamp in milliseconds, generation and tree id.  (Version 1
+     *  listed every blob, sorted by name, in place of the tree.) */
+    public byte[] encode() {
+        return new Codec.Output(TAG, VERSION)
+                .id(id)
+                .string(message)
+                .nullableString(parent)
+                .nullableString(parent2)
+                .signed(timestamp.getTime())
+                .varint(generation)
+                .id(getTree())
+                .toByteArray();
+    }
+
+    /** Returns the commit that encode() turned into DATA.  Its id is read
+     *  back rather than recomputed, since the id depends on the time zone
+     *  the commit was made in. */
+    public static Commit decode(byte[] data) {
+        Codec.Input in = new Codec.Input(data, TAG, VERSION);
+        String id = in.id();
+        String message = in.string();
+        String parent = in.nullableString();
+        String parent2 = in.nullableString();
+        Date timestamp = new Date(in.signed());
+        int generation = (int) in.varint();
+        if (in.version() >= 2) {
+            return new Commit(id, message, parent, parent2, timestamp, null, in.id(), generation);
+        }
+        int n = in.count();
+        Map<String, String> blobs = new HashMap<>();
+        for (int i = 0; i < n; i += 1) {
+            blobs.put(in.string(), in.id());
+        }
+        return new Commit(id, message, parent, parent2, timestamp, blobs, null, generation);
+    }
+
     public void setTimestamp(Date date) {
         this.timestamp = date;
         this.id = generateId();
     }
 
     public void save() {
-        File commitFile = join(Repository.OBJECTS_DIR, id);
-        writeObject(commitFile, this);
+        ObjectStore.writeCommit(this);
     }
 
     public String getId() {
         return id;
     }
 
+    public void setGeneration(int generation) {
+        this.generation = generation;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
     public Date getTimestamp() {
         return timestamp;
     }
@@ -66,14 +135,43 @@ public class Commit implements Serializable {
     private String generateId() {
         return sha1(message, timestamp.toString(),
                 (parent == null ? "" : parent),
-                blobs.toString());
+                (parent2 == null ? "" : parent2),
+                tree);
     }
 
     public boolean isAdded(String sha1, String fileName) {
-        return blobs.containsKey(fileName) && blobs.get(fileName).equals(sha1);
+        return sha1.equals(getBlob(fileName));
     }
 
+    /** Returns every file of this commit.  Loads the whole tree, so prefer
+     *  getBlob for single files. */
     public Map<String, String> getBlobs() {
+        if (blobs == null) {
+            blobs = Tree.read(tree);
+        }
         return blobs;
     }
+
+    /** Returns the blob id of FILENAME in this commit, or null. */
+    public String getBlob(String fileName) {
+        if (blobs != null) {
+            return blobs.get(fileName);
+        }
+        return Tree.get(tree, fileName);
+    }
+
+    public boolean tracks(String fileName) {
+        return getBlob(fileName) != null;
+    }
+
+    /** Returns the id of the tree of this commit. */
+    public String getTree() {
+        return tree;
+    }
+
+    /** Stores a tree of the files this commit, written before trees,
+     *  lists itself, and takes it as its tree. */
+    public void storeTree() {
+        tree = Tree.write(blobs == null ? new HashMap<>() : blobs);
+    }
 }
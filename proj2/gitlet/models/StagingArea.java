@@ -1,19 +1,76 @@
 package gitlet.models;
 
 import gitlet.Repository;
+import gitlet.store.Codec;
+import gitlet.store.Journal;
+import gitlet.store.Lock;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import static gitlet.Utils.*;
 
 public class StagingArea implements Serializable {
+    /** Pinned so indexes written before the stat cache still load. */
+    private static final long serialVersionUID = 170982570917495575L;
+    /** Files modified this close to being hashed may change again without
+     *  their modification time changing, so their cached hash is not trusted
+     *  (git's "racily clean" entries). */
+    private static final long RACY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /** Tag byte and current version of the encoded form. */
+    private static final int TAG = 'I';
+    private static final int VERSION = 1;
     /** fileName -> Blob SHA-1 */
     private final Map<String, String> added = new HashMap<>();
     /** rm file */
     private final Set<String> removed = new HashSet<>();
+    /** fileName -> stat data of its working file when it was last hashed.
+     *  Null in indexes written by older versions. */
+    private Map<String, Stat> stats = new HashMap<>();
+    private transient boolean statsChanged;
     public static final File STAGE_FILE = join(Repository.GITLET_DIR, "index");
+    /** While writes are deferred, the index every load() returns. */
+    private static StagingArea pending;
+    /** True once pending has been saved since the last flush(). */
+    private static boolean saved;
+    private static boolean deferred;
+
+    /** Size, modification time and file key (the inode on Unix) of a
+     *  working file, and the SHA-1 of its contents at that point. */
+    private static class Stat implements Serializable {
+        /** Pinned so stat caches serialized by older versions still load. */
+        private static final long serialVersionUID = 1000063478362372264L;
+        final long size;
+        final long mtime;
+        final String fileKey;
+        final String sha1;
+        final long hashedAt;
+
+        Stat(BasicFileAttributes attrs, String sha1, long hashedAt) {
+            this(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    String.valueOf(attrs.fileKey()), sha1, hashedAt);
+        }
+
+        Stat(long size, long mtime, String fileKey, String sha1, long hashedAt) {
+            this.size = size;
+            this.mtime = mtime;
+            this.fileKey = fileKey;
+            this.sha1 = sha1;
+            this.hashedAt = hashedAt;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                    && mtime == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    && fileKey.equals(String.valueOf(attrs.fileKey()))
+                    && mtime < hashedAt - RACY_NANOS;
+        }
+    }
 
     public StagingArea() {
     }
@@ -49,6 +106,56 @@ public class StagingArea implements Serializable {
         return added.isEmpty() && removed.isEmpty();
     }
 
+    /** Returns the SHA-1 of FILE, the working copy of FILENAME.  FILE is
+     *  only read if its stat data differs from when it was last hashed.
+     *  Safe to call from several threads at once. */
+    public String hashOf(String fileName, File file) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Stat cached;
+        synchronized (this) {
+            if (stats == null) {
+                stats = new HashMap<>();
+            }
+            cached = stats.get(fileName);
+        }
+        if (cached != null && cached.matches(attrs)) {
+            return cached.sha1;
+        }
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        String sha1 = sha1(file);
+        synchronized (this) {
+            stats.put(fileName, new Stat(attrs, sha1, now));
+            statsChanged = true;
+        }
+        return sha1;
+    }
+
+    /** Drops the stat data of FILENAMES, which are no longer tracked. */
+    public synchronized void forgetStats(Collection<String> fileNames) {
+        if (stats != null && stats.keySet().removeAll(fileNames)) {
+            statsChanged = true;
+        }
+    }
+
+    /** Drops the stat data of every file that is neither in FILENAMES, the
+     *  files of the new head commit, nor staged. */
+    public synchronized void retainStats(Set<String> fileNames) {
+        if (stats != null && stats.keySet().removeIf(
+                name -> !fileNames.contains(name) && !added.containsKey(name))) {
+            statsChanged = true;
+        }
+    }
+
+    /** True if hashOf has recorded new stat data since this was loaded. */
+    public synchronized boolean statsChanged() {
+        return statsChanged;
+    }
+
     public Map<String, String> getAdded() {
         return added;
     }
@@ -57,14 +164,127 @@ public class StagingArea implements Serializable {
         return removed;
     }
 
+    /** Returns this index in the Codec format: the staged additions and
+     *  removals, then the stat cache, each sorted by file name. */
+    public synchronized byte[] encode() {
+        Codec.Output out = new Codec.Output(TAG, VERSION);
+        out.varint(added.size());
+        for (Map.Entry<String, String> e : new TreeMap<>(added).entrySet()) {
+            out.string(e.getKey()).id(e.getValue());
+        }
+        out.varint(removed.size());
+        for (String fileName : new TreeSet<>(removed)) {
+            out.string(fileName);
+        }
+        Map<String, Stat> sortedStats = stats == null ? new TreeMap<>() : new TreeMap<>(stats);
+        out.varint(sortedStats.size());
+        for (Map.Entry<String, Stat> e : sortedStats.entrySet()) {
+            Stat stat = e.getValue();
+            out.string(e.getKey()).varint(stat.size).signed(stat.mtime).string(stat.fileKey)
+                    .id(stat.sha1).signed(stat.hashedAt);
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the index that encode() turned into DATA. */
+    public static StagingArea decode(byte[] data) {
+        Codec.Input in = new Codec.Input(data, TAG, VERSION);
+        StagingArea index = new StagingArea();
+        int n = in.count();
+        for (int i = 0; i < n; i += 1) {
+            index.added.put(in.string(), in.id());
+        }
+        n = in.count();
+        for (int i = 0; i < n; i += 1) {
+            index.removed.add(in.string());
+        }
+        n = in.count();
+        for (int i = 0; i < n; i += 1) {
+            String fileName = in.string();
+            index.stats.put(fileName, new Stat(in.varint(), in.signed(), in.string(),
+                    in.id(), in.signed()));
+        }
+        return index;
+    }
+
     public void save() {
-        writeObject(STAGE_FILE, this);
+        if (deferred) {
+            pending = this;
+            saved = true;
+            return;
+        }
+        Journal.write(STAGE_FILE, encode());
     }
 
+    /** Loads the index, whether it was saved in the Codec format or
+     *  serialized by an older version. */
     public static StagingArea load() {
-        if (STAGE_FILE.exists()) {
+        if (pending != null) {
+            return pending;
+        }
+        StagingArea index = read();
+        if (deferred) {
+            pending = index;
+        }
+        return index;
+    }
+
+    private static StagingArea read() {
+        if (!STAGE_FILE.exists()) {
+            return new StagingArea();
+        }
+        byte[] data = readContents(STAGE_FILE);
+        if (Codec.isJavaSerialized(data)) {
             return readObject(STAGE_FILE, StagingArea.class);
         }
-        return new StagingArea();
+        return decode(data);
+    }
+
+    /** Saves the stat cache of INDEX, filled in by a command that only
+     *  reads the repository.  A shared Lock is made exclusive first, which
+     *  lets other processes in meanwhile, so the index is then read again
+     *  and just the stats are merged into it, keeping whatever they staged.
+     *  Stat entries are checked against the file before each use, so an
+     *  older one is never trusted wrongly. */
+    public static void saveStats(StagingArea index) {
+        if (Lock.exclusive()) {
+            index.save();
+            return;
+        }
+        Lock.upgrade();
+        if (Journal.interrupted()) {
+            // a process that held the lock meanwhile died mid-update
+            Journal.recover();
+        }
+        StagingArea current = read();
+        if (current.stats == null) {
+            current.stats = new HashMap<>();
+        }
+        synchronized (index) {
+            current.stats.putAll(index.stats);
+        }
+        Journal.write(STAGE_FILE, current.encode());
+    }
+
+    /** Makes save() keep the index in memory, and load() return that same
+     *  index, until the next flush(). */
+    public static void defer() {
+        deferred = true;
+    }
+
+    /** Writes out the index kept in memory, if it has been saved. */
+    public static void flush() {
+        if (pending != null && saved) {
+            Journal.write(STAGE_FILE, pending.encode());
+            saved = false;
+        }
+    }
+
+    /** Drops the index kept in memory and makes save() write through
+     *  again. */
+    public static void resume() {
+        pending = null;
+        saved = false;
+        deferred = false;
     }
 }
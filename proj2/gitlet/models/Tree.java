@@ -0,0 +1,362 @@
+package gitlet.models;
+
+import gitlet.store.Codec;
+import gitlet.store.ObjectStore;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static gitlet.Utils.*;
+
+/** A content-addressed snapshot of the tracked files of a commit, as a
+ *  hash trie of fileName -> blob id.  A node at depth D holding at most
+ *  MAX_LEAF files is a leaf listing them; a larger one is split into 16
+ *  children by the D-th hex digit of the SHA-1 of each file name.  The
+ *  shape depends only on the files, so equal snapshots, and equal parts
+ *  of them, have equal ids: a commit that changes one file writes only
+ *  the nodes on the path to it, and diff skips every subtree whose id is
+ *  the same on both sides.
+ *  @author camvan
+ */
+public class Tree {
+    /** Largest number of files in a leaf. */
+    static final int MAX_LEAF = 128;
+    private static final int FANOUT = 16;
+    /** Tag byte and current version of the encoded form. */
+    private static final int TAG = 'T';
+    private static final int VERSION = 1;
+
+    /** fileName -> blob id, sorted; null for an inner node */
+    private final TreeMap<String, String> entries;
+    /** child ids by hex digit, null where empty; null for a leaf */
+    private final String[] children;
+    /** Number of files under this node. */
+    private final int count;
+    private String id;
+
+    private Tree(TreeMap<String, String> entries) {
+        this.entries = entries;
+        this.children = null;
+        this.count = entries.size();
+    }
+
+    private Tree(String[] children, int count) {
+        this.entries = null;
+        this.children = children;
+        this.count = count;
+    }
+
+    /** Stores a tree of FILES (fileName -> blob id) and returns its id. */
+    public static String write(Map<String, String> files) {
+        return build(new TreeMap<>(files), 0).id;
+    }
+
+    /** Returns the blob id of FILENAME in tree ROOT, or null. */
+    public static String get(String root, String fileName) {
+        String hash = sha1(fileName);
+        Tree node = ObjectStore.readTree(root);
+        for (int depth = 0; node.entries == null; depth += 1) {
+            String child = node.children[digit(hash, depth)];
+            if (child == null) {
+                return null;
+            }
+            node = ObjectStore.readTree(child);
+        }
+        return node.entries.get(fileName);
+    }
+
+    /** Returns every file of tree ROOT. */
+    public static Map<String, String> read(String root) {
+        Map<String, String> files = new HashMap<>();
+        collect(ObjectStore.readTree(root), files);
+        return files;
+    }
+
+    /** Passes the id of every node of tree ROOT to VISIT, which returns
+     *  false to skip the nodes under it, and the blob id of every file in
+     *  the leaves visited to BLOBS. */
+    public static void walk(String root, Predicate<String> visit, Consumer<String> blobs) {
+        walk(root, visit, (fileName, blob) -> blobs.accept(blob));
+    }
+
+    /** As walk, passing the name and blob id of every file to FILES. */
+    public static void walk(String root, Predicate<String> visit,
+                            BiConsumer<String, String> files) {
+        if (!visit.test(root)) {
+            return;
+        }
+        Tree node = ObjectStore.readTree(root);
+        if (node.entries != null) {
+            node.entries.forEach(files);
+            return;
+        }
+        for (String kid : node.children) {
+            if (kid != null) {
+                walk(kid, visit, files);
+            }
+        }
+    }
+
+    /** Stores the tree that results from applying CHANGES to tree ROOT and
+     *  returns its id.  CHANGES maps each changed fileName to its new blob
+     *  id, or to null if it is removed. */
+    public static String update(String root, Map<String, String> changes) {
+        Map<String, String[]> hashed = new HashMap<>();
+        for (Map.Entry<String, String> e : changes.entrySet()) {
+            hashed.put(e.getKey(), new String[]{sha1(e.getKey()), e.getValue()});
+        }
+        return update(ObjectStore.readTree(root), 0, hashed).id;
+    }
+
+    /** Returns the names of the files whose blob differs between trees A
+     *  and B, including files only in one of them. */
+    public static Set<String> diff(String a, String b) {
+        Set<String> names = new HashSet<>();
+        diff(a, b, names);
+        return names;
+    }
+
+    private static void diff(String a, String b, Set<String> names) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        Tree[] nodes = readAll(a, b);
+        if (allInner(nodes)) {
+            for (int i = 0; i < FANOUT; i += 1) {
+                diff(child(nodes[0], i), child(nodes[1], i), names);
+            }
+            return;
+        }
+        Map<String, String> left = files(nodes[0]);
+        Map<String, String> right = files(nodes[1]);
+        for (Map.Entry<String, String> e : left.entrySet()) {
+            if (!e.getValue().equals(right.get(e.getKey()))) {
+                names.add(e.getKey());
+            }
+        }
+        for (String name : right.keySet()) {
+            if (!left.containsKey(name)) {
+                names.add(name);
+            }
+        }
+    }
+
+    /** Returns the files a three-way merge of trees OURS and THEIRS, whose
+     *  common ancestor is tree BASE, has to look at: those whose blob in
+     *  THEIRS differs from both BASE and OURS.  Every other file keeps its
+     *  blob in OURS.  Each maps to its blob ids {base, ours, theirs}, null
+     *  where absent.  The three trees are walked together, and a subtree
+     *  is skipped as soon as its id in THEIRS equals that in BASE or OURS,
+     *  so the work grows with the files THEIRS changed, not the tree size. */
+    public static Map<String, String[]> mergeCandidates(String base, String ours, String theirs) {
+        Map<String, String[]> files = new TreeMap<>();
+        mergeCandidates(base, ours, theirs, files);
+        return files;
+    }
+
+    private static void mergeCandidates(String base, String ours, String theirs,
+                                        Map<String, String[]> out) {
+        if (Objects.equals(theirs, base) || Objects.equals(theirs, ours)) {
+            return;
+        }
+        Tree[] nodes = readAll(base, ours, theirs);
+        if (allInner(nodes)) {
+            for (int i = 0; i < FANOUT; i += 1) {
+                mergeCandidates(child(nodes[0], i), child(nodes[1], i),
+                        child(nodes[2], i), out);
+            }
+            return;
+        }
+        Map<String, String> b = files(nodes[0]);
+        Map<String, String> o = files(nodes[1]);
+        Map<String, String> t = files(nodes[2]);
+        Set<String> names = new HashSet<>(t.keySet());
+        names.addAll(b.keySet());
+        for (String name : names) {
+            String theirBlob = t.get(name);
+            if (!Objects.equals(theirBlob, b.get(name))
+                    && !Objects.equals(theirBlob, o.get(name))) {
+                out.put(name, new String[]{b.get(name), o.get(name), theirBlob});
+            }
+        }
+    }
+
+    /** Returns the nodes with IDS, null for a null id. */
+    private static Tree[] readAll(String... ids) {
+        Tree[] nodes = new Tree[ids.length];
+        for (int i = 0; i < ids.length; i += 1) {
+            nodes[i] = ids[i] == null ? null : ObjectStore.readTree(ids[i]);
+        }
+        return nodes;
+    }
+
+    /** Returns true if none of NODES is a leaf; a null node stands for an
+     *  empty subtree and can be split like an inner one. */
+    private static boolean allInner(Tree[] nodes) {
+        for (Tree node : nodes) {
+            if (node != null && node.entries != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String child(Tree node, int i) {
+        return node == null ? null : node.children[i];
+    }
+
+    /** Returns every file under NODE, none if it is null. */
+    private static Map<String, String> files(Tree node) {
+        Map<String, String> files = new HashMap<>();
+        if (node != null) {
+            collect(node, files);
+        }
+        return files;
+    }
+
+    /** Applies CHANGES (fileName -> {SHA-1 of fileName, blob id or null})
+     *  to NODE, which is at DEPTH, storing every new node. */
+    private static Tree update(Tree node, int depth, Map<String, String[]> changes) {
+        if (node.entries != null) {
+            TreeMap<String, String> files = new TreeMap<>(node.entries);
+            for (Map.Entry<String, String[]> e : changes.entrySet()) {
+                if (e.getValue()[1] == null) {
+                    files.remove(e.getKey());
+                } else {
+                    files.put(e.getKey(), e.getValue()[1]);
+                }
+            }
+            return build(files, depth);
+        }
+        List<Map<String, String[]>> groups = new ArrayList<>();
+        for (int i = 0; i < FANOUT; i += 1) {
+            groups.add(new HashMap<>());
+        }
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            groups.get(digit(e.getValue()[0], depth)).put(e.getKey(), e.getValue());
+        }
+        String[] kids = node.children.clone();
+        int count = 0;
+        for (int i = 0; i < FANOUT; i += 1) {
+            if (!groups.get(i).isEmpty()) {
+                Tree child = kids[i] == null ? new Tree(new TreeMap<>())
+                        : ObjectStore.readTree(kids[i]);
+                child = update(child, depth + 1, groups.get(i));
+                kids[i] = child.count == 0 ? null : child.id;
+            }
+            if (kids[i] != null) {
+                count += ObjectStore.readTree(kids[i]).count;
+            }
+        }
+        if (count <= MAX_LEAF) {
+            // small enough again to be a leaf, as build would have made it
+            TreeMap<String, String> files = new TreeMap<>();
+            for (String kid : kids) {
+                if (kid != null) {
+                    collect(ObjectStore.readTree(kid), files);
+                }
+            }
+            return build(files, depth);
+        }
+        return save(new Tree(kids, count));
+    }
+
+    /** Stores the node at DEPTH holding FILES and the nodes under it. */
+    private static Tree build(TreeMap<String, String> files, int depth) {
+        if (files.size() <= MAX_LEAF) {
+            return save(new Tree(files));
+        }
+        List<TreeMap<String, String>> groups = new ArrayList<>();
+        for (int i = 0; i < FANOUT; i += 1) {
+            groups.add(new TreeMap<>());
+        }
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            groups.get(digit(sha1(e.getKey()), depth)).put(e.getKey(), e.getValue());
+        }
+        String[] kids = new String[FANOUT];
+        for (int i = 0; i < FANOUT; i += 1) {
+            if (!groups.get(i).isEmpty()) {
+                kids[i] = build(groups.get(i), depth + 1).id;
+            }
+        }
+        return save(new Tree(kids, files.size()));
+    }
+
+    private static Tree save(Tree node) {
+        byte[] data = node.encode();
+        node.id = sha1((Object) data);
+        ObjectStore.writeTree(node.id, node, data);
+        return node;
+    }
+
+    private static void collect(Tree node, Map<String, String> files) {
+        if (node.entries != null) {
+            files.putAll(node.entries);
+            return;
+        }
+        for (String kid : node.children) {
+            if (kid != null) {
+                collect(ObjectStore.readTree(kid), files);
+            }
+        }
+    }
+
+    private static int digit(String hash, int depth) {
+        return Character.digit(hash.charAt(depth), 16);
+    }
+
+    /** Returns this node in the Codec format: a leaf as 0 and its sorted
+     *  files, an inner node as 1, its file count, a 16-bit mask of its
+     *  children and their ids. */
+    byte[] encode() {
+        Codec.Output out = new Codec.Output(TAG, VERSION);
+        if (entries != null) {
+            out.varint(0).varint(entries.size());
+            for (Map.Entry<String, String> e : entries.entrySet()) {
+                out.string(e.getKey()).id(e.getValue());
+            }
+            return out.toByteArray();
+        }
+        int mask = 0;
+        for (int i = 0; i < FANOUT; i += 1) {
+            if (children[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        out.varint(1).varint(count).varint(mask);
+        for (String kid : children) {
+            if (kid != null) {
+                out.id(kid);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the node with id ID that encode() turned into DATA. */
+    public static Tree decode(String id, byte[] data) {
+        Codec.Input in = new Codec.Input(data, TAG, VERSION);
+        Tree node;
+        if (in.varint() == 0) {
+            TreeMap<String, String> files = new TreeMap<>();
+            int n = in.count();
+            for (int i = 0; i < n; i += 1) {
+                files.put(in.string(), in.id());
+            }
+            node = new Tree(files);
+        } else {
+            int count = (int) in.varint();
+            int mask = (int) in.varint();
+            String[] kids = new String[FANOUT];
+            for (int i = 0; i < FANOUT; i += 1) {
+                if ((mask & (1 << i)) != 0) {
+                    kids[i] = in.id();
+                }
+            }
+            node = new Tree(kids, count);
+        }
+        node.id = id;
+        return node;
+    }
+}
@@ -0,0 +1,318 @@
+package gitlet.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** An immutable set of non-negative ints, compressed in the manner of
+ *  Roaring bitmaps: values are grouped by their high 16 bits, and the low
+ *  16 bits of each group are kept in whichever container is smallest for
+ *  them, a sorted array of values, a list of runs or a plain bitmap of
+ *  WORD_COUNT words.  The commits reachable from a commit have positions
+ *  in the CommitGraph that mostly come in long runs, so such a set takes
+ *  a few bytes per run however many commits it holds.
+ *
+ *  Set operations go group by group, on the plain bitmaps of the two
+ *  containers where both sets have a group, and copy or skip the other
+ *  containers whole.
+ *  @author camvan
+ */
+public class Bitmap {
+    private static final int ARRAY = 0;
+    private static final int RUNS = 1;
+    private static final int WORDS = 2;
+    /** Words in the plain bitmap of a group. */
+    private static final int WORD_COUNT = 1 << 10;
+
+    public static final Bitmap EMPTY = new Bitmap(new char[0], new Container[0]);
+
+    private enum Op {
+        OR, AND, AND_NOT;
+
+        long apply(long x, long y) {
+            switch (this) {
+                case OR:
+                    return x | y;
+                case AND:
+                    return x & y;
+                default:
+                    return x & ~y;
+            }
+        }
+    }
+
+    /** the high 16 bits of the values in each container, ascending */
+    private final char[] keys;
+    private final Container[] containers;
+
+    private Bitmap(char[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+    }
+
+    /** Returns the set of the bits set in BITS. */
+    public static Bitmap of(BitSet bits) {
+        long[] all = bits.toLongArray();
+        int groups = (all.length + WORD_COUNT - 1) / WORD_COUNT;
+        char[] keys = new char[groups];
+        Container[] containers = new Container[groups];
+        int n = 0;
+        for (int g = 0; g < groups; g += 1) {
+            Container c = Container.of(Arrays.copyOfRange(all, g * WORD_COUNT, (g + 1) * WORD_COUNT));
+            if (c != null) {
+                keys[n] = (char) g;
+                containers[n] = c;
+                n += 1;
+            }
+        }
+        return new Bitmap(Arrays.copyOf(keys, n), Arrays.copyOf(containers, n));
+    }
+
+    public boolean contains(int value) {
+        int i = Arrays.binarySearch(keys, (char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    /** Returns the number of values in this set. */
+    public int cardinality() {
+        int total = 0;
+        for (Container c : containers) {
+            total += c.cardinality;
+        }
+        return total;
+    }
+
+    /** Returns the values of this set in ascending order. */
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < keys.length; i += 1) {
+            long[] words = containers[i].words();
+            int base = keys[i] << 16;
+            for (int w = 0; w < WORD_COUNT; w += 1) {
+                for (long word = words[w]; word != 0; word &= word - 1) {
+                    result[n] = base + w * 64 + Long.numberOfTrailingZeros(word);
+                    n += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    public Bitmap or(Bitmap other) {
+        return combine(other, Op.OR);
+    }
+
+    public Bitmap and(Bitmap other) {
+        return combine(other, Op.AND);
+    }
+
+    /** Returns the values of this set that are not in OTHER. */
+    public Bitmap andNot(Bitmap other) {
+        return combine(other, Op.AND_NOT);
+    }
+
+    private Bitmap combine(Bitmap other, Op op) {
+        char[] resultKeys = new char[keys.length + other.keys.length];
+        Container[] result = new Container[resultKeys.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            int a = i < keys.length ? keys[i] : Integer.MAX_VALUE;
+            int b = j < other.keys.length ? other.keys[j] : Integer.MAX_VALUE;
+            Container c;
+            if (a == b) {
+                long[] x = containers[i].words();
+                long[] y = other.containers[j].words();
+                for (int w = 0; w < WORD_COUNT; w += 1) {
+                    x[w] = op.apply(x[w], y[w]);
+                }
+                c = Container.of(x);
+                i += 1;
+                j += 1;
+            } else if (a < b) {
+                c = op == Op.AND ? null : containers[i];
+                i += 1;
+            } else {
+                c = op == Op.OR ? other.containers[j] : null;
+                j += 1;
+            }
+            if (c != null) {
+                resultKeys[n] = (char) Math.min(a, b);
+                result[n] = c;
+                n += 1;
+            }
+        }
+        return new Bitmap(Arrays.copyOf(resultKeys, n), Arrays.copyOf(result, n));
+    }
+
+    /** Writes this set to OUT. */
+    public void write(Codec.Output out) {
+        out.varint(keys.length);
+        for (int i = 0; i < keys.length; i += 1) {
+            out.varint(keys[i]);
+            containers[i].write(out);
+        }
+    }
+
+    /** Reads a set written by write from IN. */
+    public static Bitmap read(Codec.Input in) {
+        int n = in.count();
+        char[] keys = new char[n];
+        Container[] containers = new Container[n];
+        for (int i = 0; i < n; i += 1) {
+            keys[i] = (char) in.varint();
+            containers[i] = Container.read(in);
+        }
+        return new Bitmap(keys, containers);
+    }
+
+    /** The low 16 bits of the values of one group. */
+    private static final class Container {
+        final int kind;
+        /** ARRAY: the values, ascending; RUNS: the first value and the
+         *  length minus one of each run, in turn */
+        final char[] values;
+        /** WORDS: the plain bitmap */
+        final long[] words;
+        final int cardinality;
+
+        private Container(int kind, char[] values, long[] words, int cardinality) {
+            this.kind = kind;
+            this.values = values;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /** Returns the smallest container of the bits set in WORDS, or
+         *  null if there are none. */
+        static Container of(long[] words) {
+            BitSet bits = BitSet.valueOf(words);
+            int cardinality = bits.cardinality();
+            if (cardinality == 0) {
+                return null;
+            }
+            int runs = 0;
+            for (int s = bits.nextSetBit(0); s >= 0; s = bits.nextSetBit(bits.nextClearBit(s))) {
+                runs += 1;
+            }
+            int arrayBytes = 2 * cardinality;
+            int runBytes = 4 * runs;
+            if (runBytes <= arrayBytes && runBytes < 8 * WORD_COUNT) {
+                char[] values = new char[2 * runs];
+                int n = 0;
+                for (int s = bits.nextSetBit(0); s >= 0; s = bits.nextSetBit(s)) {
+                    int e = bits.nextClearBit(s);
+                    values[n] = (char) s;
+                    values[n + 1] = (char) (e - s - 1);
+                    n += 2;
+                    s = e;
+                }
+                return new Container(RUNS, values, null, cardinality);
+            }
+            if (arrayBytes < 8 * WORD_COUNT) {
+                char[] values = new char[cardinality];
+                int n = 0;
+                for (int s = bits.nextSetBit(0); s >= 0; s = bits.nextSetBit(s + 1)) {
+                    values[n] = (char) s;
+                    n += 1;
+                }
+                return new Container(ARRAY, values, null, cardinality);
+            }
+            return new Container(WORDS, null, Arrays.copyOf(words, WORD_COUNT), cardinality);
+        }
+
+        boolean contains(char value) {
+            if (kind == WORDS) {
+                return (words[value >>> 6] & (1L << value)) != 0;
+            }
+            if (kind == ARRAY) {
+                return Arrays.binarySearch(values, value) >= 0;
+            }
+            // the last run starting at or before VALUE
+            int lo = 0;
+            int hi = values.length / 2 - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (values[2 * mid] <= value) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return values[2 * lo] <= value && value - values[2 * lo] <= values[2 * lo + 1];
+        }
+
+        /** Returns a new plain bitmap of this container. */
+        long[] words() {
+            if (kind == WORDS) {
+                return words.clone();
+            }
+            long[] result = new long[WORD_COUNT];
+            if (kind == ARRAY) {
+                for (char v : values) {
+                    result[v >>> 6] |= 1L << v;
+                }
+                return result;
+            }
+            BitSet bits = new BitSet(WORD_COUNT * 64);
+            for (int i = 0; i < values.length; i += 2) {
+                bits.set(values[i], values[i] + values[i + 1] + 1);
+            }
+            long[] set = bits.toLongArray();
+            System.arraycopy(set, 0, result, 0, set.length);
+            return result;
+        }
+
+        /** Writes the kind, then an ARRAY's values or a RUNS's runs as
+         *  varint gaps from the end of the one before, or the words. */
+        void write(Codec.Output out) {
+            out.varint(kind);
+            if (kind == WORDS) {
+                ByteBuffer buf = ByteBuffer.allocate(8 * WORD_COUNT);
+                buf.asLongBuffer().put(words);
+                out.bytes(buf.array());
+                return;
+            }
+            int step = kind == ARRAY ? 1 : 2;
+            out.varint(values.length / step);
+            int next = 0;
+            for (int i = 0; i < values.length; i += step) {
+                out.varint(values[i] - next);
+                next = values[i] + 1;
+                if (kind == RUNS) {
+                    out.varint(values[i + 1]);
+                    next += values[i + 1];
+                }
+            }
+        }
+
+        static Container read(Codec.Input in) {
+            int kind = (int) in.varint();
+            if (kind == WORDS) {
+                long[] words = new long[WORD_COUNT];
+                ByteBuffer.wrap(in.bytes(8 * WORD_COUNT)).asLongBuffer().get(words);
+                return of(words);
+            }
+            if (kind != ARRAY && kind != RUNS) {
+                throw new IllegalArgumentException("corrupt bitmap");
+            }
+            int step = kind == ARRAY ? 1 : 2;
+            char[] values = new char[in.count() * step];
+            int next = 0;
+            int cardinality = 0;
+            for (int i = 0; i < values.length; i += step) {
+                values[i] = (char) (next + in.varint());
+                next = values[i] + 1;
+                cardinality += 1;
+                if (kind == RUNS) {
+                    values[i + 1] = (char) in.varint();
+                    next += values[i + 1];
+                    cardinality += values[i + 1];
+                }
+            }
+            return new Container(kind, values, null, cardinality);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package gitlet.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/** Splits a stream into content-defined chunks with FastCDC: a cut is
+ *  made where a gear hash of the preceding bytes matches a mask, so an
+ *  edit only changes the chunks around it and the boundaries after it
+ *  fall back into place.  Chunks are between MIN_SIZE and MAX_SIZE bytes,
+ *  AVG_SIZE on average; a stricter mask below AVG_SIZE and a looser one
+ *  above it keep sizes close to the average ("normalized chunking").
+ *
+ *  The gear table is derived from a fixed seed, so boundaries, and with
+ *  them the ids of stored chunks, never change between versions.
+ *  @author camvan
+ */
+public class Chunker {
+    static final int MIN_SIZE = 2 << 10;
+    static final int AVG_SIZE = 8 << 10;
+    static final int MAX_SIZE = 64 << 10;
+    /** 15 and 11 one bits, spread over the high half of the hash. */
+    private static final long MASK_SMALL = 0x0000d9f003530000L;
+    private static final long MASK_LARGE = 0x0000d90003530000L;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x6769746c6574L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            // SplitMix64
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buf = new byte[2 * MAX_SIZE];
+    /** buf[start..end) holds the bytes read but not yet returned */
+    private int start;
+    private int end;
+    private boolean eof;
+
+    public Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /** Returns the next chunk, or null at the end of the stream. */
+    public byte[] next() throws IOException {
+        fill();
+        if (start == end) {
+            return null;
+        }
+        int len = cut(buf, start, end - start);
+        byte[] chunk = Arrays.copyOfRange(buf, start, start + len);
+        start += len;
+        return chunk;
+    }
+
+    /** Reads until MAX_SIZE bytes are buffered or the stream ends. */
+    private void fill() throws IOException {
+        if (end - start >= MAX_SIZE || eof) {
+            return;
+        }
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        while (end < buf.length && !eof) {
+            int n = in.read(buf, end, buf.length - end);
+            if (n < 0) {
+                eof = true;
+            } else {
+                end += n;
+            }
+        }
+    }
+
+    /** Returns the length of the chunk that starts at DATA[FROM], given
+     *  that N bytes are available there. */
+    static int cut(byte[] data, int from, int n) {
+        if (n <= MIN_SIZE) {
+            return n;
+        }
+        int limit = Math.min(n, MAX_SIZE);
+        int normal = Math.min(limit, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[data[from + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i;
+            }
+        }
+        for (; i < limit; i += 1) {
+            hash = (hash << 1) + GEAR[data[from + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i;
+            }
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,169 @@
+package gitlet.store;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** The binary format gitlet stores its model objects in.  Each encoded
+ *  object starts with a tag byte naming its type and a format version
+ *  byte, followed by fields written with the primitives below: varints
+ *  for counts and sizes, zigzag varints for signed numbers, strings as a
+ *  varint byte length and their UTF-8 bytes, and SHA-1 ids as 20 raw
+ *  bytes.  Files written by older versions with Java serialization start
+ *  with its 0xACED stream magic instead, which no tag byte equals.
+ *  @author camvan
+ */
+public class Codec {
+    private static final int JAVA_MAGIC_0 = 0xAC;
+    private static final int JAVA_MAGIC_1 = 0xED;
+    private static final int ID_SIZE = 20;
+
+    /** Returns true if DATA was written by ObjectOutputStream. */
+    public static boolean isJavaSerialized(byte[] data) {
+        return data.length >= 2 && (data[0] & 0xff) == JAVA_MAGIC_0
+                && (data[1] & 0xff) == JAVA_MAGIC_1;
+    }
+
+    public static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static long readVarint(ByteBuffer in) {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            result |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    /** Builds the encoding of one object. */
+    public static class Output {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        public Output(int tag, int version) {
+            out.write(tag);
+            out.write(version);
+        }
+
+        public Output varint(long value) {
+            writeVarint(out, value);
+            return this;
+        }
+
+        public Output signed(long value) {
+            return varint((value << 1) ^ (value >> 63));
+        }
+
+        public Output string(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        /** Writes VALUE, which may be null, as its length plus one. */
+        public Output nullableString(String value) {
+            if (value == null) {
+                return varint(0);
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length + 1);
+            out.write(bytes, 0, bytes.length);
+            return this;
+        }
+
+        /** Writes VALUE as is; its length must be known to the reader. */
+        public Output bytes(byte[] value) {
+            out.write(value, 0, value.length);
+            return this;
+        }
+
+        public Output id(String id) {
+            out.write(CommitGraph.fromHex(id), 0, ID_SIZE);
+            return this;
+        }
+
+        public byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /** Reads back the fields of an object written by Output. */
+    public static class Input {
+        private final ByteBuffer in;
+        private final int version;
+
+        /** Starts reading DATA, which must hold an object tagged TAG in a
+         *  format version no newer than MAXVERSION. */
+        public Input(byte[] data, int tag, int maxVersion) {
+            in = ByteBuffer.wrap(data);
+            if (data.length < 2 || data[0] != tag || data[1] < 1 || data[1] > maxVersion) {
+                throw new IllegalArgumentException("unknown object format");
+            }
+            version = data[1];
+            in.position(2);
+        }
+
+        public int version() {
+            return version;
+        }
+
+        public long varint() {
+            try {
+                return readVarint(in);
+            } catch (BufferUnderflowException excp) {
+                throw new IllegalArgumentException("truncated object");
+            }
+        }
+
+        public int count() {
+            long n = varint();
+            if (n < 0 || n > in.remaining()) {
+                throw new IllegalArgumentException("corrupt object");
+            }
+            return (int) n;
+        }
+
+        public long signed() {
+            long n = varint();
+            return (n >>> 1) ^ -(n & 1);
+        }
+
+        public String string() {
+            return new String(bytes(count()), StandardCharsets.UTF_8);
+        }
+
+        /** Reads a string written by Output.nullableString, whose length is
+         *  stored plus one, so that it may take up one byte fewer than
+         *  count() would allow. */
+        public String nullableString() {
+            long n = varint();
+            if (n < 0 || n - 1 > in.remaining()) {
+                throw new IllegalArgumentException("corrupt object");
+            }
+            return n == 0 ? null : new String(bytes((int) n - 1), StandardCharsets.UTF_8);
+        }
+
+        public String id() {
+            return CommitGraph.toHex(bytes(ID_SIZE));
+        }
+
+        /** Reads N bytes written by Output.bytes. */
+        public byte[] bytes(int n) {
+            if (n > in.remaining()) {
+                throw new IllegalArgumentException("truncated object");
+            }
+            byte[] result = new byte[n];
+            in.get(result);
+            return result;
+        }
+    }
+}
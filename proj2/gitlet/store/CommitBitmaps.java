@@ -0,0 +1,186 @@
+package gitlet.store;
+
+import gitlet.Repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+
+/** Reachability bitmaps for selected commits, kept in .gitlet/commit-bitmaps
+ *  next to the commit graph.  The bitmap of a commit is the set of the
+ *  positions in the CommitGraph of the commits reachable from it, itself
+ *  included.  Every SPACING-th commit of the graph has one, so the commits
+ *  reachable from any commit are found by walking back from it only as far
+ *  as the nearest selected commits and or-ing in their bitmaps; ranges,
+ *  ahead/behind counts and ancestry checks are then and/andNot of sets.
+ *
+ *  The file is a sequence of records, each the 4-byte length of a Codec
+ *  encoding of a position, the id there and its Bitmap, that encoding and
+ *  its CRC-32.  Records are appended as commits are added to the graph;
+ *  a record that does not check out, or no longer matches the graph, ends
+ *  the file, and is cut off before the next append.
+ *  @author camvan
+ */
+public class CommitBitmaps {
+    public static final File BITMAP_FILE = join(Repository.GITLET_DIR, "commit-bitmaps");
+
+    /** Tag byte and current version of a record in the Codec format. */
+    private static final int TAG = 'B';
+    private static final int VERSION = 1;
+    /** One commit in this many has a bitmap. */
+    private static final int SPACING = 64;
+
+    private final CommitGraph graph;
+    /** position -> bitmap of each selected commit read */
+    private final Map<Integer, Bitmap> bitmaps = new HashMap<>();
+    /** length of the valid records at the start of the file */
+    private long validLength;
+    /** the first position whose bitmap may not be stored yet */
+    private int covered;
+
+    /** The bitmaps loaded by this process, for the graph they were read
+     *  against. */
+    private static CommitBitmaps loaded;
+
+    private CommitBitmaps(CommitGraph graph) {
+        this.graph = graph;
+    }
+
+    /** Returns the bitmaps of the current repository, read against GRAPH. */
+    public static CommitBitmaps load(CommitGraph graph) {
+        if (loaded == null || loaded.graph != graph) {
+            loaded = new CommitBitmaps(graph);
+            loaded.read();
+        }
+        return loaded;
+    }
+
+    private static boolean selected(int pos) {
+        return pos % SPACING == SPACING - 1;
+    }
+
+    /** Returns the positions of the commits reachable from the commit at
+     *  position POS. */
+    public Bitmap reach(int pos) {
+        BitSet seen = new BitSet(graph.size());
+        Bitmap result = Bitmap.EMPTY;
+        Deque<Integer> stack = new ArrayDeque<>();
+        seen.set(pos);
+        stack.push(pos);
+        while (!stack.isEmpty()) {
+            int c = stack.pop();
+            Bitmap stored = bitmaps.get(c);
+            if (stored != null) {
+                result = result.or(stored);
+                continue;
+            }
+            for (int p : new int[]{graph.parent(c), graph.parent2(c)}) {
+                if (p != CommitGraph.NONE && !seen.get(p)) {
+                    seen.set(p);
+                    stack.push(p);
+                }
+            }
+        }
+        return result.or(Bitmap.of(seen));
+    }
+
+    /** Returns true if the commit at position A is reachable from the one
+     *  at position B. */
+    public boolean isAncestor(int a, int b) {
+        return a <= b && reach(b).contains(a);
+    }
+
+    /** Stores the bitmaps of the selected commits of GRAPH that have none
+     *  yet, creating the file if there is none. */
+    public static CommitBitmaps update(CommitGraph graph) {
+        CommitBitmaps index = load(graph);
+        index.extend();
+        return index;
+    }
+
+    /** Rewrites the file for the commits now in GRAPH, as after a gc has
+     *  renumbered it. */
+    public static void rebuild(CommitGraph graph) {
+        loaded = new CommitBitmaps(graph);
+        byte[] records = loaded.records(0);
+        Journal.write(BITMAP_FILE, records);
+        loaded.validLength = records.length;
+    }
+
+    private void extend() {
+        byte[] records = records(covered);
+        if (records.length == 0 && BITMAP_FILE.exists()) {
+            return;
+        }
+        try (RandomAccessFile out = new RandomAccessFile(BITMAP_FILE, "rw")) {
+            out.setLength(validLength);
+            out.seek(validLength);
+            out.write(records);
+            validLength += records.length;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Computes the bitmaps of the selected commits from position FROM on,
+     *  and returns their records. */
+    private byte[] records(int from) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int pos = from; pos < graph.size(); pos += 1) {
+            if (!selected(pos)) {
+                continue;
+            }
+            // the parents come first, so their own bitmaps are already in
+            Bitmap reach = reach(pos);
+            bitmaps.put(pos, reach);
+            Codec.Output record = new Codec.Output(TAG, VERSION).varint(pos).id(graph.id(pos));
+            reach.write(record);
+            byte[] body = record.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            out.writeBytes(ByteBuffer.allocate(4).putInt(body.length).array());
+            out.writeBytes(body);
+            out.writeBytes(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+        }
+        covered = graph.size();
+        return out.toByteArray();
+    }
+
+    /** Reads the valid records at the start of the file. */
+    private void read() {
+        byte[] data = BITMAP_FILE.isFile() ? readContents(BITMAP_FILE) : new byte[0];
+        ByteBuffer in = ByteBuffer.wrap(data);
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 0 || in.remaining() < length + 8) {
+                break;
+            }
+            byte[] body = new byte[length];
+            in.get(in.position() + 4, body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != in.getInt(in.position() + 4 + length)) {
+                break;
+            }
+            Codec.Input record = new Codec.Input(body, TAG, VERSION);
+            int pos = (int) record.varint();
+            if (pos < covered || pos >= graph.size() || !graph.id(pos).equals(record.id())) {
+                break;
+            }
+            bitmaps.put(pos, Bitmap.read(record));
+            covered = pos + 1;
+            in.position(in.position() + length + 8);
+        }
+        validLength = in.position();
+    }
+}
@@ -0,0 +1,353 @@
+package gitlet.store;
+
+import gitlet.Repository;
+import gitlet.models.Commit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+
+/** A compact table of every commit's id, parents, timestamp and generation
+ *  number, kept in .gitlet/commit-graph so that history walks only touch
+ *  small fixed-width records instead of deserializing whole Commits.
+ *
+ *  The file is an 8-byte header (magic, version) followed by one
+ *  RECORD_SIZE record per commit, parents always before their children,
+ *  each ending in the CRC-32 of the rest.  Records are appended as commits
+ *  are made, and forced to disk by the Journal before any branch can name
+ *  them; a record that does not check out ends the file, and is cut off
+ *  before the next append.
+ *  @author camvan
+ */
+public class CommitGraph {
+    public static final File GRAPH_FILE = join(Repository.GITLET_DIR, "commit-graph");
+    /** Position of an absent parent. */
+    public static final int NONE = -1;
+
+    private static final int MAGIC = 0x43475048;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    /** id (20) + parent (4) + parent2 (4) + timestamp (8) + generation (4)
+     *  + CRC-32 (4). */
+    private static final int RECORD_SIZE = 44;
+
+    private String[] ids = new String[16];
+    private int[] parents = new int[16];
+    private int[] parents2 = new int[16];
+    private long[] timestamps = new long[16];
+    private int[] generations = new int[16];
+    private int size;
+    /** length of the valid records at the start of the file */
+    private long validLength;
+    /** commit id -> position in the table */
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    /** The graph loaded by this process, kept up to date by add. */
+    private static CommitGraph loaded;
+
+    private CommitGraph() {
+    }
+
+    /** Returns the commit graph of the current repository, building it from
+     *  the object store the first time it is used on an existing repository. */
+    public static CommitGraph load() {
+        if (loaded != null) {
+            return loaded;
+        }
+        CommitGraph graph = new CommitGraph();
+        if (GRAPH_FILE.exists()) {
+            graph.read();
+        } else {
+            graph.build(ObjectStore.commitIds());
+        }
+        loaded = graph;
+        return graph;
+    }
+
+    /** Rebuilds the graph and GRAPH_FILE from the commits IDS alone, which
+     *  must include the parents of each, as after a gc. */
+    public static void rebuild(List<String> ids) {
+        CommitGraph graph = new CommitGraph();
+        graph.build(ids);
+        loaded = graph;
+    }
+
+    /** Returns true if GRAPH_FILE is there, in the current format, and its
+     *  last record checks out, as it does unless an append was cut short.
+     *  Only reads the header and the last record. */
+    public static boolean intact() {
+        try (RandomAccessFile in = new RandomAccessFile(GRAPH_FILE, "r")) {
+            long length = in.length();
+            if (length < HEADER_SIZE || (length - HEADER_SIZE) % RECORD_SIZE != 0
+                    || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return false;
+            }
+            if (length == HEADER_SIZE) {
+                return true;
+            }
+            byte[] record = new byte[RECORD_SIZE];
+            in.seek(length - RECORD_SIZE);
+            in.readFully(record);
+            return checks(ByteBuffer.wrap(record), 0);
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Drops the loaded graph, so that the next load() reads the file anew. */
+    public static void forget() {
+        loaded = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Returns the position of commit ID, or NONE if it is not in the graph. */
+    public int indexOf(String id) {
+        Integer pos = positions.get(id);
+        return pos == null ? NONE : pos;
+    }
+
+    public boolean contains(String id) {
+        return positions.containsKey(id);
+    }
+
+    public String id(int pos) {
+        return ids[pos];
+    }
+
+    public int parent(int pos) {
+        return parents[pos];
+    }
+
+    public int parent2(int pos) {
+        return parents2[pos];
+    }
+
+    public long timestamp(int pos) {
+        return timestamps[pos];
+    }
+
+    public int generation(int pos) {
+        return generations[pos];
+    }
+
+    /** Returns the generation number of a new commit with parents PARENT
+     *  and PARENT2 (either may be null), both of which are in the graph. */
+    public int nextGeneration(String parent, String parent2) {
+        int gen = 1;
+        for (String pid : new String[]{parent, parent2}) {
+            if (pid != null) {
+                gen = Math.max(gen, generations[indexOf(pid)] + 1);
+            }
+        }
+        return gen;
+    }
+
+    /** Returns the position of a lowest common ancestor of the commits at
+     *  positions A and B, or NONE if they share no history.
+     *
+     *  Commits are visited in decreasing generation order, painting each
+     *  with the side(s) it is reachable from.  Every descendant of a commit
+     *  has a larger generation, so once a commit is popped its paint is
+     *  final and the first one painted by both sides is a merge base that
+     *  is not the ancestor of any other.  The walk therefore stops there,
+     *  touching only the commits above the merge base. */
+    public int mergeBase(int a, int b) {
+        final byte sideA = 1;
+        final byte sideB = 2;
+        byte[] paint = new byte[size];
+        PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) ->
+                generations[x] != generations[y]
+                        ? Integer.compare(generations[y], generations[x])
+                        : Long.compare(timestamps[y], timestamps[x]));
+        paint[a] |= sideA;
+        paint[b] |= sideB;
+        queue.add(a);
+        if (b != a) {
+            queue.add(b);
+        }
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            byte flags = paint[c];
+            if (flags == (sideA | sideB)) {
+                return c;
+            }
+            for (int p : new int[]{parents[c], parents2[c]}) {
+                if (p != NONE && (paint[p] | flags) != paint[p]) {
+                    boolean queued = paint[p] != 0;
+                    paint[p] |= flags;
+                    if (!queued) {
+                        queue.add(p);
+                    }
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /** Appends COMMIT to the graph and to GRAPH_FILE, loading any parents
+     *  that are missing from the object store first.  Returns its position. */
+    public int add(Commit commit) {
+        int before = size;
+        int pos = insert(commit);
+        if (size != before) {
+            append(before);
+        }
+        return pos;
+    }
+
+    private int insert(Commit commit) {
+        if (contains(commit.getId())) {
+            return indexOf(commit.getId());
+        }
+        Deque<Commit> stack = new ArrayDeque<>();
+        stack.push(commit);
+        while (!stack.isEmpty()) {
+            Commit c = stack.peek();
+            if (contains(c.getId())) {
+                stack.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (String pid : new String[]{c.getParent(), c.getParent2()}) {
+                if (pid != null && !contains(pid)) {
+                    stack.push(ObjectStore.readCommit(pid));
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                record(c);
+            }
+        }
+        return indexOf(commit.getId());
+    }
+
+    private void record(Commit c) {
+        int p1 = c.getParent() == null ? NONE : indexOf(c.getParent());
+        int p2 = c.getParent2() == null ? NONE : indexOf(c.getParent2());
+        int gen = nextGeneration(c.getParent(), c.getParent2());
+        put(c.getId(), p1, p2, c.getTimestamp().getTime(), gen);
+    }
+
+    private void put(String id, int p1, int p2, long time, int gen) {
+        if (size == ids.length) {
+            int n = size * 2;
+            ids = Arrays.copyOf(ids, n);
+            parents = Arrays.copyOf(parents, n);
+            parents2 = Arrays.copyOf(parents2, n);
+            timestamps = Arrays.copyOf(timestamps, n);
+            generations = Arrays.copyOf(generations, n);
+        }
+        ids[size] = id;
+        parents[size] = p1;
+        parents2[size] = p2;
+        timestamps[size] = time;
+        generations[size] = gen;
+        positions.put(id, size);
+        size += 1;
+    }
+
+    /** Builds the graph from the commits IDS and writes it out. */
+    private void build(List<String> ids) {
+        for (String id : ids) {
+            insert(ObjectStore.readCommit(id));
+        }
+        write();
+    }
+
+    private void read() {
+        ByteBuffer buf;
+        try {
+            buf = ByteBuffer.wrap(Files.readAllBytes(GRAPH_FILE.toPath()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            throw new IllegalArgumentException("corrupt commit-graph");
+        }
+        byte[] raw = new byte[20];
+        while (buf.remaining() >= RECORD_SIZE && checks(buf, buf.position())) {
+            buf.get(raw);
+            int p1 = buf.getInt();
+            int p2 = buf.getInt();
+            if (p1 >= size || p2 >= size) {
+                break;
+            }
+            put(toHex(raw), p1, p2, buf.getLong(), buf.getInt());
+            buf.getInt();
+        }
+        validLength = HEADER_SIZE + (long) size * RECORD_SIZE;
+    }
+
+    /** Returns true if the record at OFFSET in BUF matches its CRC-32. */
+    private static boolean checks(ByteBuffer buf, int offset) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), offset, RECORD_SIZE - 4);
+        return (int) crc.getValue() == buf.getInt(offset + RECORD_SIZE - 4);
+    }
+
+    private void write() {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + size * RECORD_SIZE);
+        buf.putInt(MAGIC).putInt(VERSION);
+        for (int i = 0; i < size; i += 1) {
+            putRecord(buf, i);
+        }
+        Journal.write(GRAPH_FILE, buf.array());
+        validLength = buf.capacity();
+    }
+
+    /** Writes the records from position FROM onwards after the valid ones
+     *  in GRAPH_FILE, cutting off whatever followed them, and has the
+     *  Journal force them to disk at its next commit. */
+    private void append(int from) {
+        ByteBuffer buf = ByteBuffer.allocate((size - from) * RECORD_SIZE);
+        for (int i = from; i < size; i += 1) {
+            putRecord(buf, i);
+        }
+        try (RandomAccessFile out = new RandomAccessFile(GRAPH_FILE, "rw")) {
+            out.setLength(validLength);
+            out.seek(validLength);
+            out.write(buf.array());
+            validLength += buf.capacity();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.created(GRAPH_FILE);
+    }
+
+    private void putRecord(ByteBuffer buf, int i) {
+        int start = buf.position();
+        buf.put(fromHex(ids[i]));
+        buf.putInt(parents[i]).putInt(parents2[i]);
+        buf.putLong(timestamps[i]).putInt(generations[i]);
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), start, RECORD_SIZE - 4);
+        buf.putInt((int) crc.getValue());
+    }
+
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    static String toHex(byte[] raw) {
+        StringBuilder result = new StringBuilder(raw.length * 2);
+        for (byte b : raw) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16));
+            result.append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+}
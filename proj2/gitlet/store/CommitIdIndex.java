@@ -0,0 +1,298 @@
+package gitlet.store;
+
+import gitlet.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** The ids of every commit as a sorted table of 20-byte ids in
+ *  .gitlet/commit-ids (after a 12-byte magic, version, count header), so
+ *  that full and abbreviated ids resolve by binary search over a memory
+ *  mapping of the file.
+ *
+ *  New ids go to a second, small table of the same format in
+ *  .gitlet/commit-ids-new, so that a commit rewrites that table and not
+ *  the whole of commit-ids.  Lookups search both.  Once the small table
+ *  would pass OVERFLOW_LIMIT ids, it is merged into commit-ids, as it is
+ *  by gc.
+ *  @author camvan
+ */
+public class CommitIdIndex {
+    public static final File INDEX_FILE = join(Repository.GITLET_DIR, "commit-ids");
+    public static final File OVERFLOW_FILE = join(Repository.GITLET_DIR, "commit-ids-new");
+
+    private static final int MAGIC = 0x43494458;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int ID_SIZE = 20;
+    /** Most ids OVERFLOW_FILE holds; 20 KiB of them. */
+    private static final int OVERFLOW_LIMIT = 1024;
+
+    /** The mapped tables, kept until this process rewrites them. */
+    private static ByteBuffer cached;
+    private static ByteBuffer cachedOverflow;
+    /** Ids added since the last flush while writes are deferred. */
+    private static final TreeSet<String> pending = new TreeSet<>();
+    private static boolean deferred;
+
+    /** Returns the ids of the commits whose id starts with PREFIX, in
+     *  order, stopping after LIMIT of them. */
+    public static List<String> resolve(String prefix, int limit) {
+        if (prefix.isEmpty() || prefix.length() > 40 || !prefix.matches("[0-9a-fA-F]+")) {
+            return new ArrayList<>();
+        }
+        prefix = prefix.toLowerCase();
+        TreeSet<String> merged = new TreeSet<>();
+        search(map(), prefix, limit, merged);
+        search(mapOverflow(), prefix, limit, merged);
+        for (String id : pending.tailSet(prefix)) {
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            merged.add(id);
+        }
+        return new ArrayList<>(merged).subList(0, Math.min(limit, merged.size()));
+    }
+
+    /** Adds to RESULT the first LIMIT ids of TABLE that start with PREFIX. */
+    private static void search(ByteBuffer table, String prefix, int limit, Set<String> result) {
+        int count = table.getInt(8);
+        byte[] probe = new byte[ID_SIZE];
+        int i = lowerBound(table, count, CommitGraph.fromHex(
+                (prefix + "0".repeat(40 - prefix.length()))));
+        for (int end = Math.min(count, i + limit); i < end; i += 1) {
+            table.get(HEADER_SIZE + i * ID_SIZE, probe);
+            String id = CommitGraph.toHex(probe);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+    }
+
+    /** Drops the mapped tables, so that the next lookup sees the files
+     *  anew. */
+    public static void forget() {
+        cached = null;
+        cachedOverflow = null;
+    }
+
+    /** Inserts commit ID, building the table from the commit graph first
+     *  if this repository has none yet. */
+    public static void add(String id) {
+        if (deferred) {
+            pending.add(id);
+        } else {
+            insert(new TreeSet<>(Collections.singleton(id)));
+        }
+    }
+
+    /** Keeps ids added from now on in memory until flush(), which inserts
+     *  them all with a single rewrite of the tables. */
+    public static void defer() {
+        deferred = true;
+    }
+
+    public static void flush() {
+        if (!pending.isEmpty()) {
+            insert(pending);
+            pending.clear();
+        }
+    }
+
+    /** Drops the ids not yet written out and writes later ones through
+     *  again. */
+    public static void resume() {
+        pending.clear();
+        deferred = false;
+    }
+
+    /** Adds the IDS in neither table to the overflow table, or merges them
+     *  and the overflow table into the main one if that would pass
+     *  OVERFLOW_LIMIT. */
+    private static void insert(SortedSet<String> ids) {
+        ByteBuffer table = map();
+        ByteBuffer overflow = mapOverflow();
+        TreeSet<String> fresh = new TreeSet<>();
+        for (String id : ids) {
+            if (!contains(table, id) && !contains(overflow, id)) {
+                fresh.add(id);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+        if (overflow.getInt(8) + fresh.size() <= OVERFLOW_LIMIT) {
+            byte[] contents = merge(overflow, fresh);
+            Journal.write(OVERFLOW_FILE, contents);
+            cachedOverflow = ByteBuffer.wrap(contents);
+            return;
+        }
+        fold(fresh);
+    }
+
+    /** Merges the overflow table into the main one. */
+    public static void compact() {
+        if (mapOverflow().getInt(8) > 0) {
+            fold(new TreeSet<>());
+        }
+    }
+
+    /** Merges IDS, in neither table, and the overflow table into the main
+     *  table, as one update of the journal. */
+    private static void fold(TreeSet<String> ids) {
+        ids.addAll(ids(mapOverflow()));
+        Journal.begin();
+        try {
+            write(merge(map(), ids));
+            Journal.commit();
+        } catch (RuntimeException excp) {
+            Journal.abort();
+            throw excp;
+        }
+    }
+
+    /** Returns TABLE with IDS, none of which it holds, merged into it. */
+    private static byte[] merge(ByteBuffer table, SortedSet<String> ids) {
+        int count = table.getInt(8);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + (count + ids.size()) * ID_SIZE);
+        out.putInt(MAGIC).putInt(VERSION).putInt(count + ids.size());
+        int from = 0;
+        for (String id : ids) {
+            byte[] raw = CommitGraph.fromHex(id);
+            int pos = lowerBound(table, count, raw);
+            out.put(table.slice(HEADER_SIZE + from * ID_SIZE, (pos - from) * ID_SIZE));
+            from = pos;
+            out.put(raw);
+        }
+        out.put(table.slice(HEADER_SIZE + from * ID_SIZE, (count - from) * ID_SIZE));
+        return out.array();
+    }
+
+    private static boolean contains(ByteBuffer table, String id) {
+        byte[] raw = CommitGraph.fromHex(id);
+        int count = table.getInt(8);
+        int pos = lowerBound(table, count, raw);
+        if (pos == count) {
+            return false;
+        }
+        byte[] probe = new byte[ID_SIZE];
+        table.get(HEADER_SIZE + pos * ID_SIZE, probe);
+        return Arrays.equals(probe, raw);
+    }
+
+    private static List<String> ids(ByteBuffer table) {
+        int count = table.getInt(8);
+        List<String> result = new ArrayList<>(count);
+        byte[] probe = new byte[ID_SIZE];
+        for (int i = 0; i < count; i += 1) {
+            table.get(HEADER_SIZE + i * ID_SIZE, probe);
+            result.add(CommitGraph.toHex(probe));
+        }
+        return result;
+    }
+
+    /** Rewrites the table from every commit in the commit graph. */
+    public static void rebuild() {
+        CommitGraph graph = CommitGraph.load();
+        List<String> ids = new ArrayList<>(graph.size());
+        for (int i = 0; i < graph.size(); i += 1) {
+            ids.add(graph.id(i));
+        }
+        ids.sort(null);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + ids.size() * ID_SIZE);
+        out.putInt(MAGIC).putInt(VERSION).putInt(ids.size());
+        for (String id : ids) {
+            out.put(CommitGraph.fromHex(id));
+        }
+        Journal.begin();
+        try {
+            write(out.array());
+            Journal.commit();
+        } catch (RuntimeException excp) {
+            Journal.abort();
+            throw excp;
+        }
+    }
+
+    /** Returns the position of the first id in TABLE not less than RAW. */
+    private static int lowerBound(ByteBuffer table, int count, byte[] raw) {
+        byte[] probe = new byte[ID_SIZE];
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            table.get(HEADER_SIZE + mid * ID_SIZE, probe);
+            if (Arrays.compareUnsigned(probe, raw) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static ByteBuffer map() {
+        if (cached != null) {
+            return cached;
+        }
+        if (!INDEX_FILE.exists()) {
+            rebuild();
+            return cached;
+        }
+        cached = map(INDEX_FILE);
+        return cached;
+    }
+
+    /** Returns the overflow table, an empty one if there is none. */
+    private static ByteBuffer mapOverflow() {
+        if (cachedOverflow != null) {
+            return cachedOverflow;
+        }
+        if (!OVERFLOW_FILE.exists()) {
+            cachedOverflow = emptyTable();
+        } else {
+            cachedOverflow = map(OVERFLOW_FILE);
+        }
+        return cachedOverflow;
+    }
+
+    private static ByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("corrupt " + file.getName());
+            }
+            return mapped;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Replaces INDEX_FILE with CONTENTS and drops the overflow table, both
+     *  through the journal, and looks ids up in CONTENTS from now on, as
+     *  the files may only be replaced when the journal commits. */
+    private static void write(byte[] contents) {
+        Journal.write(INDEX_FILE, contents);
+        Journal.delete(OVERFLOW_FILE);
+        cached = ByteBuffer.wrap(contents);
+        cachedOverflow = emptyTable();
+    }
+
+    private static ByteBuffer emptyTable() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).putInt(0);
+    }
+}
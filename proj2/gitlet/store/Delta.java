@@ -0,0 +1,123 @@
+package gitlet.store;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Binary deltas between two versions of a file.
+ *
+ *  A delta is the varint sizes of the base and the result followed by a
+ *  sequence of instructions: the byte 0x80 is a copy of (varint offset,
+ *  varint length) bytes from the base, and a byte N below 0x80 is an
+ *  insert of the N literal bytes that follow it.  Matches are found by
+ *  indexing the base in BLOCK-sized blocks and rolling a hash of the same
+ *  width over the target.
+ *  @author camvan
+ */
+public class Delta {
+    /** Matches shorter than this are cheaper to insert than to copy. */
+    private static final int BLOCK = 16;
+    private static final int COPY = 0x80;
+    private static final int MAX_INSERT = 0x7f;
+    private static final long PRIME = 1099511628211L;
+    /** PRIME ** (BLOCK - 1), to roll the first byte out of a hash. */
+    private static final long OUT_FACTOR;
+
+    static {
+        long f = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            f *= PRIME;
+        }
+        OUT_FACTOR = f;
+    }
+
+    /** Returns a delta that turns BASE into TARGET. */
+    public static byte[] create(byte[] base, byte[] target) {
+        Map<Long, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Codec.writeVarint(out, base.length);
+        Codec.writeVarint(out, target.length);
+        int literal = 0;
+        int i = 0;
+        long h = 0;
+        boolean rolling = false;
+        while (i + BLOCK <= target.length) {
+            if (!rolling) {
+                h = hash(target, i);
+                rolling = true;
+            }
+            Integer match = blocks.get(h);
+            int len = match == null ? 0 : matchLength(base, match, target, i);
+            if (len >= BLOCK) {
+                flushInsert(out, target, literal, i);
+                out.write(COPY);
+                Codec.writeVarint(out, match);
+                Codec.writeVarint(out, len);
+                i += len;
+                literal = i;
+                rolling = false;
+            } else if (i + BLOCK < target.length) {
+                h = (h - target[i] * OUT_FACTOR) * PRIME + target[i + BLOCK];
+                i += 1;
+            } else {
+                break;
+            }
+        }
+        flushInsert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        if (Codec.readVarint(in) != base.length) {
+            throw new IllegalArgumentException("delta does not match its base");
+        }
+        byte[] result = new byte[(int) Codec.readVarint(in)];
+        int pos = 0;
+        while (in.hasRemaining()) {
+            int op = in.get() & 0xff;
+            if (op == COPY) {
+                int offset = (int) Codec.readVarint(in);
+                int len = (int) Codec.readVarint(in);
+                System.arraycopy(base, offset, result, pos, len);
+                pos += len;
+            } else {
+                in.get(result, pos, op);
+                pos += op;
+            }
+        }
+        return result;
+    }
+
+    private static void flushInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    private static int matchLength(byte[] base, int b, byte[] target, int t) {
+        int len = 0;
+        while (b + len < base.length && t + len < target.length
+                && base[b + len] == target[t + len]) {
+            len += 1;
+        }
+        return len;
+    }
+
+    private static long hash(byte[] data, int from) {
+        long h = 0;
+        for (int i = from; i < from + BLOCK; i += 1) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+}
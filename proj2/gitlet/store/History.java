@@ -0,0 +1,109 @@
+package gitlet.store;
+
+import gitlet.models.Commit;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/** A walk back through history from some commits, newest first.  The
+ *  walk runs on the CommitGraph alone, and a commit is only read from the
+ *  object store when next() returns it, so taking the first few commits
+ *  of a long history costs no more than reading those few.
+ *
+ *  The commits waiting to be returned are kept in a queue ordered by
+ *  timestamp, so walking from several commits at once is a k-way merge of
+ *  their histories by date.  Each commit is returned once, however many
+ *  of the histories it is on.
+ *  @author camvan
+ */
+public class History implements Iterator<Commit> {
+    private final CommitGraph graph;
+    private final boolean firstParent;
+    /** commits left out, together with everything they reach */
+    private final Bitmap excluded;
+    private final PriorityQueue<Integer> queue;
+    private final BitSet queued;
+    private long since = Long.MIN_VALUE;
+    private long until = Long.MAX_VALUE;
+    /** position of the commit next() returns, or NONE if not found yet */
+    private int next = CommitGraph.NONE;
+
+    /** Walks back from the commits at positions STARTS, following only
+     *  first parents if FIRSTPARENT, and leaving out the commits in
+     *  EXCLUDED, which must hold every ancestor of each commit it holds. */
+    public History(CommitGraph graph, boolean firstParent, Bitmap excluded, int... starts) {
+        this.graph = graph;
+        this.firstParent = firstParent;
+        this.excluded = excluded;
+        this.queue = new PriorityQueue<>((x, y) -> graph.timestamp(x) != graph.timestamp(y)
+                ? Long.compare(graph.timestamp(y), graph.timestamp(x)) : Integer.compare(y, x));
+        this.queued = new BitSet(graph.size());
+        for (int pos : starts) {
+            push(pos);
+        }
+    }
+
+    /** Ends the walk at the first commit made before SINCE, and passes over
+     *  the commits made after UNTIL without reading them; both are times in
+     *  milliseconds. */
+    public void limitTime(long since, long until) {
+        this.since = since;
+        this.until = until;
+    }
+
+    private void push(int pos) {
+        if (pos != CommitGraph.NONE && !queued.get(pos) && !excluded.contains(pos)) {
+            queued.set(pos);
+            queue.add(pos);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == CommitGraph.NONE && !queue.isEmpty()) {
+            int pos = queue.poll();
+            if (graph.timestamp(pos) < since) {
+                queue.clear();
+                break;
+            }
+            push(graph.parent(pos));
+            if (!firstParent) {
+                push(graph.parent2(pos));
+            }
+            if (graph.timestamp(pos) <= until) {
+                next = pos;
+            }
+        }
+        return next != CommitGraph.NONE;
+    }
+
+    @Override
+    public Commit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Commit commit = ObjectStore.readCommit(graph.id(next));
+        next = CommitGraph.NONE;
+        return commit;
+    }
+
+    /** Returns the positions of the commits of GRAPH that are no commit's
+     *  parent: the heads of the branches, and the commits left behind by
+     *  reset or rm-branch.  Walking from all of them visits every commit. */
+    public static int[] tips(CommitGraph graph) {
+        BitSet parents = new BitSet(graph.size());
+        for (int i = 0; i < graph.size(); i += 1) {
+            for (int p : new int[]{graph.parent(i), graph.parent2(i)}) {
+                if (p != CommitGraph.NONE) {
+                    parents.set(p);
+                }
+            }
+        }
+        BitSet tips = new BitSet(graph.size());
+        tips.set(0, graph.size());
+        tips.andNot(parents);
+        return tips.stream().toArray();
+    }
+}
@@ -0,0 +1,264 @@
+package gitlet.store;
+
+import gitlet.Repository;
+import gitlet.Trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static gitlet.Utils.*;
+
+/** Makes the updates to the mutable files of a repository (HEAD, the
+ *  branches, the index and the commit-id table) atomic and durable as a
+ *  group, so that a crash never leaves a branch naming a missing commit or
+ *  an index cut short.
+ *
+ *  Between begin() and commit(), writes are only collected.  commit() then
+ *  1. writes each new file to TMP_DIR and forces it, together with every
+ *     object created since the last commit, to disk;
+ *  2. writes JOURNAL_FILE, listing each temporary file and the file it
+ *     replaces, under a CRC-32, and forces it: this is the commit point;
+ *  3. renames each temporary file over its target and deletes the files
+ *     to be deleted, then deletes JOURNAL_FILE.
+ *  A write outside begin() and commit() is committed on its own.
+ *
+ *  recover() finishes a commit that was interrupted after its commit point
+ *  by redoing step 3, and forgets one interrupted before it.  Either way
+ *  it empties TMP_DIR, where objects are also staged before being renamed
+ *  into place.
+ *  @author camvan
+ */
+public class Journal {
+    public static final File JOURNAL_FILE = join(Repository.GITLET_DIR, "journal");
+    public static final File TMP_DIR = join(Repository.GITLET_DIR, "tmp");
+    /** Tag byte and current version of the journal in the Codec format. */
+    private static final int TAG = 'J';
+    private static final int VERSION = 1;
+
+    /** target -> its new contents, or null to delete it */
+    private static final Map<File, byte[]> pending = new LinkedHashMap<>();
+    /** objects written since the last commit, not yet forced to disk */
+    private static final Set<File> created = new LinkedHashSet<>();
+    private static int depth;
+
+    /** Collects writes until the matching commit(). */
+    public static void begin() {
+        depth += 1;
+    }
+
+    /** Replaces TARGET with CONTENTS. */
+    public static void write(File target, byte[] contents) {
+        pending.put(target, contents);
+        if (depth == 0) {
+            commit();
+        }
+    }
+
+    /** Deletes TARGET. */
+    public static void delete(File target) {
+        pending.put(target, null);
+        if (depth == 0) {
+            commit();
+        }
+    }
+
+    /** Notes that FILE, a new object or a file appended to, has to be on
+     *  disk before the next commit point. */
+    public static void created(File file) {
+        created.add(file);
+    }
+
+    /** Returns a new, empty file in TMP_DIR. */
+    public static File tempFile() {
+        try {
+            Files.createDirectories(TMP_DIR.toPath());
+            return Files.createTempFile(TMP_DIR.toPath(), "tmp-", "").toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Applies the writes collected since the matching begin(), once the
+     *  outermost begin() is matched. */
+    public static void commit() {
+        if (depth > 0) {
+            depth -= 1;
+        }
+        if (depth > 0) {
+            return;
+        }
+        long start = Trace.start();
+        long bytes = 0;
+        try {
+            List<String[]> renames = new ArrayList<>();
+            Set<File> dirs = new HashSet<>();
+            for (Map.Entry<File, byte[]> e : pending.entrySet()) {
+                String temp = null;
+                if (e.getValue() != null) {
+                    File tmp = tempFile();
+                    Files.write(tmp.toPath(), e.getValue());
+                    bytes += e.getValue().length;
+                    force(tmp.toPath());
+                    temp = tmp.getName();
+                }
+                renames.add(new String[]{relative(e.getKey()), temp});
+                dirs.add(e.getKey().getAbsoluteFile().getParentFile());
+            }
+            for (File file : created) {
+                if (!file.exists()) {
+                    // replaced since, as by a rebuilt index
+                    continue;
+                }
+                force(file.toPath());
+                dirs.add(file.getAbsoluteFile().getParentFile());
+            }
+            created.clear();
+            if (renames.isEmpty()) {
+                forceDirs(dirs);
+                return;
+            }
+            // the objects have to be in place before anything can name them
+            forceDirs(dirs);
+            Files.write(JOURNAL_FILE.toPath(), encode(renames));
+            force(JOURNAL_FILE.toPath());
+            forceDir(Repository.GITLET_DIR);
+            replay(renames);
+            forceDirs(dirs);
+            Files.delete(JOURNAL_FILE.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pending.clear();
+            Trace.end("Journal.commit", start, bytes);
+        }
+    }
+
+    /** Drops the writes collected since the outermost begin(). */
+    public static void abort() {
+        depth = 0;
+        pending.clear();
+    }
+
+    /** Returns true if an update was interrupted and left a journal or
+     *  temporary files behind.  Only meaningful under the Lock, which no
+     *  process updating the repository can be holding at the same time. */
+    public static boolean interrupted() {
+        String[] leftover = TMP_DIR.list();
+        return JOURNAL_FILE.exists() || leftover != null && leftover.length > 0;
+    }
+
+    /** Completes or forgets a commit that was interrupted, and removes the
+     *  temporary files left behind. */
+    public static void recover() {
+        if (JOURNAL_FILE.isFile()) {
+            List<String[]> renames = decode(readContents(JOURNAL_FILE));
+            try {
+                if (renames != null) {
+                    replay(renames);
+                    Set<File> dirs = new HashSet<>();
+                    for (String[] r : renames) {
+                        dirs.add(join(Repository.GITLET_DIR, r[0]).getParentFile());
+                    }
+                    forceDirs(dirs);
+                }
+                Files.delete(JOURNAL_FILE.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        List<String> leftover = plainFilenamesIn(TMP_DIR);
+        if (leftover != null) {
+            for (String name : leftover) {
+                join(TMP_DIR, name).delete();
+            }
+        }
+    }
+
+    /** Renames each {target, temporary file} in RENAMES into place, or
+     *  deletes the target if there is no temporary file.  A temporary file
+     *  that is gone was renamed before an interruption. */
+    private static void replay(List<String[]> renames) throws IOException {
+        for (String[] r : renames) {
+            Path target = join(Repository.GITLET_DIR, r[0]).toPath();
+            if (r[1] == null) {
+                Files.deleteIfExists(target);
+                continue;
+            }
+            Path tmp = join(TMP_DIR, r[1]).toPath();
+            if (Files.exists(tmp)) {
+                Files.createDirectories(target.getParent());
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    /** Returns the path of FILE relative to the .gitlet directory. */
+    private static String relative(File file) {
+        return Repository.GITLET_DIR.getAbsoluteFile().toPath()
+                .relativize(file.getAbsoluteFile().toPath()).toString();
+    }
+
+    /** Returns RENAMES in the Codec format, followed by its CRC-32. */
+    private static byte[] encode(List<String[]> renames) {
+        Codec.Output out = new Codec.Output(TAG, VERSION);
+        out.varint(renames.size());
+        for (String[] r : renames) {
+            out.string(r[0]).nullableString(r[1]);
+        }
+        byte[] body = out.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return ByteBuffer.allocate(body.length + 4).put(body).putInt((int) crc.getValue()).array();
+    }
+
+    /** Returns the renames in DATA, or null if it was not completely
+     *  written. */
+    private static List<String[]> decode(byte[] data) {
+        if (data.length < 4) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if ((int) crc.getValue() != ByteBuffer.wrap(data, data.length - 4, 4).getInt()) {
+            return null;
+        }
+        Codec.Input in = new Codec.Input(Arrays.copyOf(data, data.length - 4), TAG, VERSION);
+        int n = in.count();
+        List<String[]> renames = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            renames.add(new String[]{in.string(), in.nullableString()});
+        }
+        return renames;
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private static void forceDirs(Set<File> dirs) {
+        for (File dir : dirs) {
+            forceDir(dir);
+        }
+    }
+
+    /** Forces the entries of directory DIR to disk, where the platform
+     *  allows it. */
+    private static void forceDir(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            //not supported here; renames are still atomic
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package gitlet.store;
+
+import gitlet.Repository;
+import gitlet.Trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+import static gitlet.Utils.*;
+
+/** A lock on a repository, held on LOCK_FILE with FileChannel.lock so
+ *  that it is shared with other processes.  Commands that only read take
+ *  it shared, and run alongside each other; commands that change HEAD,
+ *  the branches, the index or the object store take it exclusive.
+ *
+ *  Objects never change once written and are renamed into place whole,
+ *  so reading them needs nothing more than the shared lock.  status and
+ *  diff only read, but make the lock exclusive before they save the stat
+ *  cache they refreshed.  Calls nest within a process: an inner acquire
+ *  keeps the lock already held, or upgrades it if it needs an exclusive
+ *  one.
+ *  @author camvan
+ */
+public class Lock {
+    public static final File LOCK_FILE = join(Repository.GITLET_DIR, "lock");
+
+    private static FileChannel channel;
+    private static FileLock held;
+    private static int depth;
+
+    /** Locks the repository, EXCLUSIVE or shared, waiting as long as
+     *  another process holds a conflicting lock. */
+    public static void acquire(boolean exclusive) {
+        depth += 1;
+        if (held != null && (exclusive() || !exclusive)) {
+            return;
+        }
+        lock(exclusive);
+    }
+
+    /** Undoes the matching acquire(), unlocking when it was the first. */
+    public static void release() {
+        depth -= 1;
+        if (depth > 0) {
+            return;
+        }
+        try {
+            if (held != null) {
+                held.release();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            held = null;
+            channel = null;
+        }
+    }
+
+    /** True if this process holds the lock exclusively. */
+    public static boolean exclusive() {
+        return held != null && !held.isShared();
+    }
+
+    /** Turns a shared lock into an exclusive one, waiting for the other
+     *  readers to finish.  Anything read under the shared lock may have
+     *  changed by the time this returns. */
+    public static void upgrade() {
+        if (!exclusive()) {
+            lock(true);
+        }
+    }
+
+    /** Replaces the lock held, if any, with a new one, waiting for it. */
+    private static void lock(boolean exclusive) {
+        try {
+            if (held != null) {
+                held.release();
+                held = null;
+            }
+            if (channel == null) {
+                channel = FileChannel.open(LOCK_FILE.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            long start = Trace.start();
+            held = channel.lock(0, Long.MAX_VALUE, !exclusive);
+            Trace.end("lock", start, 0);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package gitlet.store;
+
+import gitlet.Repository;
+import gitlet.models.Commit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static gitlet.Utils.*;
+
+/** Append-only indexes from commit messages to commit ids, so that find
+ *  reads one small bucket file instead of every commit.
+ *
+ *  messages/XX holds a "<SHA-1 of message> <commit id>" line per commit,
+ *  where XX is the first two hex digits of the message's SHA-1, and
+ *  messages/words/XX holds a "<word> <commit id>" line for each distinct
+ *  word of each message, bucketed by the SHA-1 of the word.  Words are the
+ *  lower-cased runs of letters and digits of a message.
+ *
+ *  An append cut short by a crash leaves a bucket whose last line lacks
+ *  its newline.  Lookups skip any line that does not end in a whole id,
+ *  and the next append to the bucket, or recover(), cuts the line off.
+ *  @author camvan
+ */
+public class MessageIndex {
+    public static final File INDEX_DIR = join(Repository.GITLET_DIR, "messages");
+    public static final File WORDS_DIR = join(INDEX_DIR, "words");
+
+    /** Records the message of COMMIT, building the indexes from every
+     *  stored commit first if this repository has none yet. */
+    public static void add(Commit commit) {
+        if (!INDEX_DIR.isDirectory()) {
+            rebuild();
+        } else {
+            // forced to disk before the branch can name the commit
+            append(INDEX_DIR, Collections.singletonList(commit)).forEach(Journal::created);
+        }
+    }
+
+    /** Returns the sorted ids of the commits whose message is MESSAGE. */
+    public static List<String> find(String message) {
+        ensure();
+        String key = sha1(message) + " ";
+        return lookup(join(INDEX_DIR, key.substring(0, 2)), key);
+    }
+
+    /** Returns the sorted ids of the commits whose message contains WORD
+     *  as a whole word, ignoring case. */
+    public static List<String> grep(String word) {
+        ensure();
+        List<String> words = words(word);
+        if (words.size() != 1) {
+            return new ArrayList<>();
+        }
+        String key = words.get(0) + " ";
+        return lookup(join(WORDS_DIR, sha1(words.get(0)).substring(0, 2)), key);
+    }
+
+    /** Returns the sorted, distinct ids on the lines of BUCKET that start
+     *  with KEY and end in a whole commit id. */
+    private static List<String> lookup(File bucket, String key) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String line : readLines(bucket)) {
+            if (line.startsWith(key) && ID.matcher(line).region(key.length(), line.length()).matches()) {
+                result.add(line.substring(key.length()));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static final Pattern ID = Pattern.compile("[0-9a-f]{40}");
+
+    /** Cuts off the partial last line an interrupted append may have left
+     *  in any bucket. */
+    public static void recover() {
+        for (File dir : new File[]{INDEX_DIR, WORDS_DIR}) {
+            List<String> names = plainFilenamesIn(dir);
+            if (names != null) {
+                for (String name : names) {
+                    cutPartialLine(join(dir, name));
+                }
+            }
+        }
+    }
+
+    /** Truncates BUCKET after its last newline, if it does not end in one. */
+    private static void cutPartialLine(File bucket) {
+        if (!bucket.isFile()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(bucket.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer last = ByteBuffer.allocate(1);
+            if (size == 0 || channel.read(last, size - 1) == 1 && last.get(0) == '\n') {
+                return;
+            }
+            byte[] data = Files.readAllBytes(bucket.toPath());
+            int end = data.length;
+            while (end > 0 && data[end - 1] != '\n') {
+                end -= 1;
+            }
+            channel.truncate(end);
+            channel.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static void ensure() {
+        if (!INDEX_DIR.isDirectory()) {
+            rebuild();
+        }
+    }
+
+    /** Indexes every stored commit from scratch. */
+    public static void rebuild() {
+        rebuild(ObjectStore.commitIds());
+    }
+
+    /** Indexes the commits IDS from scratch.  The new indexes are built
+     *  aside and renamed into place, replacing any old ones. */
+    public static void rebuild(List<String> ids) {
+        File tmp = join(Repository.GITLET_DIR, "messages.tmp");
+        deleteTree(tmp);
+        if (!join(tmp, WORDS_DIR.getName()).mkdirs()) {
+            throw new IllegalArgumentException("cannot create " + tmp.getPath());
+        }
+        List<Commit> commits = new ArrayList<>();
+        for (String id : ids) {
+            commits.add(ObjectStore.readCommit(id));
+        }
+        append(tmp, commits);
+        deleteTree(INDEX_DIR);
+        if (!tmp.renameTo(INDEX_DIR)) {
+            throw new IllegalArgumentException("cannot create " + INDEX_DIR.getPath());
+        }
+    }
+
+    private static void deleteTree(File dir) {
+        for (File sub : new File[]{join(dir, WORDS_DIR.getName()), dir}) {
+            List<String> names = plainFilenamesIn(sub);
+            if (names != null) {
+                for (String name : names) {
+                    join(sub, name).delete();
+                }
+            }
+        }
+        join(dir, WORDS_DIR.getName()).delete();
+        dir.delete();
+    }
+
+    /** Appends the lines for COMMITS to the indexes under ROOT and returns
+     *  the buckets written. */
+    private static Set<File> append(File root, List<Commit> commits) {
+        Map<File, StringBuilder> lines = new HashMap<>();
+        for (Commit commit : commits) {
+            String hash = sha1(commit.getMessage());
+            lines.computeIfAbsent(join(root, hash.substring(0, 2)), k -> new StringBuilder())
+                    .append(hash).append(' ').append(commit.getId()).append('\n');
+            for (String word : new LinkedHashSet<>(words(commit.getMessage()))) {
+                File bucket = join(root, WORDS_DIR.getName(), sha1(word).substring(0, 2));
+                lines.computeIfAbsent(bucket, k -> new StringBuilder())
+                        .append(word).append(' ').append(commit.getId()).append('\n');
+            }
+        }
+        try {
+            for (Map.Entry<File, StringBuilder> e : lines.entrySet()) {
+                cutPartialLine(e.getKey());
+                Files.write(e.getKey().toPath(),
+                        e.getValue().toString().getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return lines.keySet();
+    }
+
+    private static List<String> words(String text) {
+        List<String> result = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> readLines(File bucket) {
+        if (!bucket.isFile()) {
+            return new ArrayList<>();
+        }
+        try {
+            // decoded leniently, as a partial line may end mid-character
+            String text = new String(Files.readAllBytes(bucket.toPath()), StandardCharsets.UTF_8);
+            return Arrays.asList(text.split("\n"));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
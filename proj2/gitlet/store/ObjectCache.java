@@ -0,0 +1,75 @@
+package gitlet.store;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** An in-memory cache of objects keyed by SHA-1, bounded by the total
+ *  weight (in bytes) of its entries rather than their number, and evicting
+ *  the least recently used entries first.  Objects are immutable once
+ *  stored, so entries never go stale.
+ *  @author camvan
+ */
+public class ObjectCache<V> {
+    private final String name;
+    private final long capacity;
+    /** id -> entry, least recently used first */
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** A cache called NAME holding at most CAPACITY bytes of objects. */
+    public ObjectCache(String name, long capacity) {
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    /** Returns the object cached under ID, or null. */
+    public synchronized V get(String id) {
+        Entry<V> e = entries.get(id);
+        if (e == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return e.value;
+    }
+
+    /** Caches VALUE, which weighs WEIGHT bytes, under ID.  Objects heavier
+     *  than the whole cache are not kept. */
+    public synchronized void put(String id, V value, long weight) {
+        if (weight > capacity) {
+            return;
+        }
+        Entry<V> old = entries.put(id, new Entry<>(value, weight));
+        if (old != null) {
+            this.weight -= old.weight;
+        }
+        this.weight += weight;
+        Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (this.weight > capacity) {
+            this.weight -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions += 1;
+        }
+    }
+
+    /** Returns a one-line summary of the use of this cache. */
+    public synchronized String stats() {
+        return String.format("%s cache: %d hits, %d misses, %d evictions, %d objects, "
+                + "%d of %d bytes", name, hits, misses, evictions, entries.size(),
+                weight, capacity);
+    }
+}
@@ -0,0 +1,575 @@
+package gitlet.store;
+
+import gitlet.Repository;
+import gitlet.Trace;
+import gitlet.models.Blob;
+import gitlet.models.Commit;
+import gitlet.models.Tree;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** Typed storage for gitlet objects.  Commits and blobs live in separate
+ *  namespaces under OBJECTS_DIR, each fanned out by the first two hex
+ *  digits of the SHA-1 (objects/commits/ab/cdef...), so that scanning
+ *  the commits never has to open a blob.  Blobs of CHUNK_THRESHOLD bytes
+ *  or more are split into content-defined chunks, kept in a third
+ *  namespace and shared between all blobs that contain them.  Blobs may
+ *  also have been moved into a PackFile by `gitlet pack`.
+ *  @author camvan
+ */
+public class ObjectStore {
+    public static final File COMMITS_DIR = join(Repository.OBJECTS_DIR, "commits");
+    public static final File BLOBS_DIR = join(Repository.OBJECTS_DIR, "blobs");
+    public static final File CHUNKS_DIR = join(Repository.OBJECTS_DIR, "chunks");
+    public static final File TREES_DIR = join(Repository.OBJECTS_DIR, "trees");
+    /** Present while the commits written before trees are given one. */
+    public static final File UNTREED_FILE = join(Repository.GITLET_DIR, "untreed-commits");
+    /** Files at least this large are stored as chunks. */
+    public static final long CHUNK_THRESHOLD = 64 << 10;
+
+    /** Class name as it appears in the header of a serialized Commit. */
+    private static final byte[] COMMIT_CLASS =
+            Commit.class.getName().getBytes(StandardCharsets.UTF_8);
+    /** Start of every raw loose blob. */
+    private static final byte[] BLOB_TAG = "blob ".getBytes(StandardCharsets.UTF_8);
+    /** Start of every chunked loose blob. */
+    private static final byte[] CHUNKS_TAG = "chunks ".getBytes(StandardCharsets.UTF_8);
+    /** A chunk id and its 4-byte length. */
+    private static final int CHUNK_ENTRY = 24;
+
+    /** Commits read or written by this process, weighed by their stored size. */
+    public static final ObjectCache<Commit> COMMITS = new ObjectCache<>("commit", 8L << 20);
+    /** Blob contents read by this process. */
+    public static final ObjectCache<byte[]> BLOBS = new ObjectCache<>("blob", 32L << 20);
+    /** Tree nodes read or written by this process, weighed by their stored size. */
+    public static final ObjectCache<Tree> TREES = new ObjectCache<>("tree", 8L << 20);
+
+    public static File commitFile(String id) {
+        return join(COMMITS_DIR, id.substring(0, 2), id.substring(2));
+    }
+
+    public static File blobFile(String id) {
+        return join(BLOBS_DIR, id.substring(0, 2), id.substring(2));
+    }
+
+    public static File treeFile(String id) {
+        return join(TREES_DIR, id.substring(0, 2), id.substring(2));
+    }
+
+    public static File chunkFile(String id) {
+        return join(CHUNKS_DIR, id.substring(0, 2), id.substring(2));
+    }
+
+    public static boolean hasCommit(String id) {
+        return commitFile(id).isFile();
+    }
+
+    /** Reads commit ID, whether it is stored in the Codec format or was
+     *  serialized by an older version. */
+    public static Commit readCommit(String id) {
+        Commit commit = COMMITS.get(id);
+        if (commit != null) {
+            return commit;
+        }
+        long start = Trace.start();
+        File file = commitFile(id);
+        byte[] data = readContents(file);
+        if (Codec.isJavaSerialized(data)) {
+            commit = readObject(file, Commit.class);
+        } else {
+            commit = Commit.decode(data);
+        }
+        Trace.end("readCommit", start, data.length);
+        COMMITS.put(id, commit, data.length);
+        return commit;
+    }
+
+    public static Tree readTree(String id) {
+        Tree tree = TREES.get(id);
+        if (tree == null) {
+            long start = Trace.start();
+            byte[] data = readContents(treeFile(id));
+            tree = Tree.decode(id, data);
+            Trace.end("readTree", start, data.length);
+            TREES.put(id, tree, data.length);
+        }
+        return tree;
+    }
+
+    /** Stores tree node TREE, whose encoding DATA has the SHA-1 ID, unless
+     *  it is already stored. */
+    public static void writeTree(String id, Tree tree, byte[] data) {
+        File file = treeFile(id);
+        if (!file.isFile()) {
+            mkdirs(file.getParentFile());
+            writeAtomically(file, data);
+        }
+        TREES.put(id, tree, data.length);
+    }
+
+    /** Returns the contents of blob ID, whether it is loose or packed. */
+    public static byte[] readBlobContent(String id) {
+        byte[] content = BLOBS.get(id);
+        if (content == null) {
+            long start = Trace.start();
+            content = readUncachedBlob(id);
+            Trace.end("readBlob", start, content.length);
+            BLOBS.put(id, content, content.length);
+        }
+        return content;
+    }
+
+    private static byte[] readUncachedBlob(String id) {
+        File loose = blobFile(id);
+        if (loose.isFile()) {
+            try (FileChannel in = FileChannel.open(loose.toPath(), StandardOpenOption.READ)) {
+                long start = headerLength(in, CHUNKS_TAG);
+                if (start >= 0) {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    for (String chunkId : chunkIds(in, start)) {
+                        content.write(Files.readAllBytes(chunkFile(chunkId).toPath()));
+                    }
+                    return content.toByteArray();
+                }
+                start = headerLength(in, BLOB_TAG);
+                if (start < 0) {
+                    return readObject(loose, Blob.class).getContent();
+                }
+                ByteBuffer content = ByteBuffer.allocate((int) (in.size() - start));
+                for (long pos = start; content.hasRemaining(); ) {
+                    int n = in.read(content, pos);
+                    if (n < 0) {
+                        break;
+                    }
+                    pos += n;
+                }
+                return content.array();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return readPackedBlob(id);
+    }
+
+    /** Writes the contents of blob ID to TARGET.  Loose blobs, and the
+     *  chunks of chunked ones, are copied with FileChannel.transferTo,
+     *  without passing through the heap. */
+    public static void copyBlobTo(String id, File target) {
+        File loose = blobFile(id);
+        try {
+            byte[] cached = BLOBS.get(id);
+            if (cached != null || !loose.isFile()) {
+                Files.write(target.toPath(), cached != null ? cached : readBlobContent(id));
+                return;
+            }
+            try (FileChannel in = FileChannel.open(loose.toPath(), StandardOpenOption.READ)) {
+                long chunked = headerLength(in, CHUNKS_TAG);
+                long start = headerLength(in, BLOB_TAG);
+                if (chunked < 0 && start < 0) {
+                    Files.write(target.toPath(), readObject(loose, Blob.class).getContent());
+                    return;
+                }
+                try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    if (chunked < 0) {
+                        transfer(in, start, out);
+                        return;
+                    }
+                    for (String chunkId : chunkIds(in, chunked)) {
+                        try (FileChannel chunk = FileChannel.open(chunkFile(chunkId).toPath(),
+                                StandardOpenOption.READ)) {
+                            transfer(chunk, 0, out);
+                        }
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream over the contents of blob ID.  A loose blob, or
+     *  the chunks of a chunked one, is read from disk as the stream is
+     *  read; other blobs are read into memory with readBlobContent. */
+    public static InputStream openBlob(String id) {
+        File loose = blobFile(id);
+        byte[] cached = BLOBS.get(id);
+        if (cached != null || !loose.isFile()) {
+            return new ByteArrayInputStream(cached != null ? cached : readBlobContent(id));
+        }
+        try {
+            List<String> chunks;
+            long start;
+            try (FileChannel in = FileChannel.open(loose.toPath(), StandardOpenOption.READ)) {
+                long chunked = headerLength(in, CHUNKS_TAG);
+                chunks = chunked < 0 ? null : chunkIds(in, chunked);
+                start = headerLength(in, BLOB_TAG);
+            }
+            if (chunks != null) {
+                Iterator<String> next = chunks.iterator();
+                return new SequenceInputStream(new Enumeration<InputStream>() {
+                    @Override
+                    public boolean hasMoreElements() {
+                        return next.hasNext();
+                    }
+
+                    @Override
+                    public InputStream nextElement() {
+                        try {
+                            return Files.newInputStream(chunkFile(next.next()).toPath());
+                        } catch (IOException excp) {
+                            throw new IllegalArgumentException(excp.getMessage());
+                        }
+                    }
+                });
+            }
+            if (start < 0) {
+                return new ByteArrayInputStream(readBlobContent(id));
+            }
+            InputStream in = new BufferedInputStream(Files.newInputStream(loose.toPath()));
+            in.skipNBytes(start);
+            return in;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static boolean isPacked(String id) {
+        for (PackFile pack : PackFile.all()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] readPackedBlob(String id) {
+        for (PackFile pack : PackFile.all()) {
+            byte[] content = pack.read(id);
+            if (content != null) {
+                return content;
+            }
+        }
+        throw new IllegalArgumentException("no such blob " + id);
+    }
+
+    /** Returns the length of the "<TAG><size>\0" header that starts the
+     *  loose blob in IN, or -1 if IN does not start with TAG.  Raw blobs are
+     *  tagged with BLOB_TAG, chunked ones with CHUNKS_TAG, and blobs
+     *  serialized by an older version with neither. */
+    private static long headerLength(FileChannel in, byte[] tag) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(32);
+        in.read(head, 0);
+        byte[] bytes = head.array();
+        if (head.position() < tag.length
+                || !Arrays.equals(bytes, 0, tag.length, tag, 0, tag.length)) {
+            return -1;
+        }
+        for (int i = tag.length; i < head.position(); i += 1) {
+            if (bytes[i] == 0) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("corrupt blob header");
+    }
+
+    /** Returns the ids of the chunks listed in IN from position START. */
+    private static List<String> chunkIds(FileChannel in, long start) throws IOException {
+        ByteBuffer entries = ByteBuffer.allocate((int) (in.size() - start));
+        for (long pos = start; entries.hasRemaining(); ) {
+            int n = in.read(entries, pos);
+            if (n < 0) {
+                throw new IllegalArgumentException("corrupt chunk list");
+            }
+            pos += n;
+        }
+        List<String> ids = new ArrayList<>();
+        byte[] raw = new byte[20];
+        for (int i = 0; i + CHUNK_ENTRY <= entries.limit(); i += CHUNK_ENTRY) {
+            entries.get(i, raw);
+            ids.add(CommitGraph.toHex(raw));
+        }
+        return ids;
+    }
+
+    private static void transfer(FileChannel in, long from, FileChannel out) throws IOException {
+        long size = in.size();
+        for (long pos = from; pos < size; ) {
+            pos += in.transferTo(pos, size - pos, out);
+        }
+    }
+
+    /** Returns the size in bytes of loose blob ID. */
+    public static long looseBlobSize(String id) {
+        return blobFile(id).length();
+    }
+
+    /** Deletes loose blob ID, through the Journal. */
+    public static void deleteLooseBlob(String id) {
+        Journal.delete(blobFile(id));
+    }
+
+    public static void writeCommit(Commit commit) {
+        File file = commitFile(commit.getId());
+        mkdirs(file.getParentFile());
+        byte[] data = commit.encode();
+        writeAtomically(file, data);
+        COMMITS.put(commit.getId(), commit, data.length);
+    }
+
+    /** Stores BLOB as a "blob <size>\0" header followed by the raw bytes
+     *  of its file, streamed in with FileChannel.transferTo; files of at
+     *  least CHUNK_THRESHOLD bytes are stored as chunks instead.  The copy
+     *  is made under a temporary name and renamed into place, and skipped
+     *  if the blob is already stored, loose or in a pack. */
+    public static void writeBlob(Blob blob) {
+        File target = blobFile(blob.getId());
+        if (target.isFile() || isPacked(blob.getId())) {
+            return;
+        }
+        mkdirs(target.getParentFile());
+        long start = Trace.start();
+        long size = blob.getFile().length();
+        if (size >= CHUNK_THRESHOLD) {
+            writeChunked(blob.getFile(), target);
+            Trace.end("writeBlob", start, size);
+            return;
+        }
+        File tmp = Journal.tempFile();
+        try {
+            try (FileChannel in = FileChannel.open(blob.getFile().toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                byte[] header = ("blob " + in.size() + "\0").getBytes(StandardCharsets.UTF_8);
+                out.write(ByteBuffer.wrap(header));
+                transfer(in, 0, out);
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Journal.created(target);
+            Trace.end("writeBlob", start, size);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Splits FILE into content-defined chunks, stores the chunks that are
+     *  not stored yet, and writes TARGET as a "chunks <size>\0" header
+     *  followed by the id and 4-byte length of each chunk in order. */
+    private static void writeChunked(File file, File target) {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        long size = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+                String chunkId = sha1((Object) chunk);
+                writeChunk(chunkId, chunk);
+                entries.write(CommitGraph.fromHex(chunkId));
+                entries.write(ByteBuffer.allocate(4).putInt(chunk.length).array());
+                size += chunk.length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] header = ("chunks " + size + "\0").getBytes(StandardCharsets.UTF_8);
+        writeAtomically(target, header, entries.toByteArray());
+    }
+
+    private static void writeChunk(String id, byte[] chunk) {
+        File target = chunkFile(id);
+        if (target.isFile()) {
+            return;
+        }
+        mkdirs(target.getParentFile());
+        writeAtomically(target, chunk);
+    }
+
+    /** Writes CONTENTS to a temporary file and renames it into place as
+     *  TARGET, which the Journal then forces to disk before its next
+     *  commit. */
+    private static void writeAtomically(File target, byte[]... contents) {
+        File tmp = Journal.tempFile();
+        try {
+            writeContents(tmp, (Object[]) contents);
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Journal.created(target);
+        } catch (IOException | IllegalArgumentException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static void mkdirs(File dir) {
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IllegalArgumentException("cannot create " + dir.getPath());
+        }
+    }
+
+    /** Returns the ids of every stored commit in lexicographic order. */
+    public static List<String> commitIds() {
+        return idsIn(COMMITS_DIR);
+    }
+
+    /** Returns the ids of every loose blob in lexicographic order. */
+    public static List<String> looseBlobIds() {
+        return idsIn(BLOBS_DIR);
+    }
+
+    /** Returns the ids of every stored tree node in lexicographic order. */
+    public static List<String> treeIds() {
+        return idsIn(TREES_DIR);
+    }
+
+    /** Returns the ids of every stored chunk in lexicographic order. */
+    public static List<String> chunkIds() {
+        return idsIn(CHUNKS_DIR);
+    }
+
+    /** Returns the ids of the chunks of loose blob ID, none if it is not
+     *  chunked. */
+    public static List<String> chunksOf(String id) {
+        try (FileChannel in = FileChannel.open(blobFile(id).toPath(), StandardOpenOption.READ)) {
+            long start = headerLength(in, CHUNKS_TAG);
+            return start < 0 ? new ArrayList<>() : chunkIds(in, start);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the total size in bytes of the stored chunks. */
+    public static long chunkBytes() {
+        long total = 0;
+        for (String id : idsIn(CHUNKS_DIR)) {
+            total += chunkFile(id).length();
+        }
+        return total;
+    }
+
+    /** Deletes every stored chunk, through the Journal.  Only safe once no
+     *  loose blob is chunked any more. */
+    public static void deleteChunks() {
+        for (String id : idsIn(CHUNKS_DIR)) {
+            Journal.delete(chunkFile(id));
+        }
+    }
+
+    /** Returns the ids of every stored blob, loose or packed, in
+     *  lexicographic order. */
+    public static List<String> blobIds() {
+        TreeSet<String> ids = new TreeSet<>(looseBlobIds());
+        for (PackFile pack : PackFile.all()) {
+            ids.addAll(pack.ids());
+        }
+        return new ArrayList<>(ids);
+    }
+
+    private static List<String> idsIn(File dir) {
+        List<String> result = new ArrayList<>();
+        String[] fanout = dir.list();
+        if (fanout == null) {
+            return result;
+        }
+        Arrays.sort(fanout);
+        for (String prefix : fanout) {
+            List<String> names = plainFilenamesIn(join(dir, prefix));
+            if (names != null) {
+                for (String name : names) {
+                    result.add(prefix + name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if the store still holds objects written by older
+     *  versions of gitlet directly in OBJECTS_DIR, or commits without a
+     *  tree. */
+    public static boolean needsMigration() {
+        List<String> loose = plainFilenamesIn(Repository.OBJECTS_DIR);
+        return loose != null && !loose.isEmpty() || !TREES_DIR.isDirectory()
+                || UNTREED_FILE.exists();
+    }
+
+    /** Moves objects written by older versions of gitlet, which kept every
+     *  object directly in OBJECTS_DIR, into the typed layout, then stores a
+     *  tree for each commit written before trees and writes the commit
+     *  again with it.  Safe to run again after an interruption, and a
+     *  no-op on an up-to-date store. */
+    public static void migrate() {
+        List<String> loose = plainFilenamesIn(Repository.OBJECTS_DIR);
+        if (loose != null) {
+            moveLoose(loose);
+        }
+        // the first tree stored creates TREES_DIR, so UNTREED_FILE is what
+        // tells an interrupted pass to go on
+        if (!TREES_DIR.isDirectory() && !UNTREED_FILE.exists()) {
+            Journal.write(UNTREED_FILE, new byte[0]);
+        }
+        if (UNTREED_FILE.exists()) {
+            for (String id : commitIds()) {
+                Commit commit = readCommit(id);
+                if (commit.getTree() == null) {
+                    commit.storeTree();
+                    writeCommit(commit);
+                }
+            }
+            mkdirs(TREES_DIR);
+            // forces the trees and commits written above to disk first
+            Journal.delete(UNTREED_FILE);
+        }
+    }
+
+    private static void moveLoose(List<String> loose) {
+        for (String id : loose) {
+            File from = join(Repository.OBJECTS_DIR, id);
+            File to = isSerializedCommit(from) ? commitFile(id) : blobFile(id);
+            mkdirs(to.getParentFile());
+            try {
+                Files.move(from.toPath(), to.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns true if FILE holds a serialized Commit, judging only by the
+     *  class descriptor at the start of the stream. */
+    private static boolean isSerializedCommit(File file) {
+        byte[] header = new byte[8 + COMMIT_CLASS.length];
+        int n;
+        try (InputStream in = new FileInputStream(file)) {
+            n = in.readNBytes(header, 0, header.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (n < header.length) {
+            return false;
+        }
+        for (int i = 0; i < COMMIT_CLASS.length; i += 1) {
+            if (header[8 + i] != COMMIT_CLASS[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,357 @@
+package gitlet.store;
+
+import gitlet.Repository;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static gitlet.Utils.*;
+
+/** A packfile: many blobs zlib-compressed into one file, each stored
+ *  either whole or as a Delta against another blob of the same pack,
+ *  plus a sorted index mapping blob ids to offsets.  Both files are read
+ *  through memory mappings, so a pack is limited to MAX_SIZE bytes; the
+ *  Writer refuses entries past it, and pack starts another pack instead.
+ *
+ *  pack-X.pack: "PACK", version, then per blob a type byte, the varint
+ *  size of the blob, (for deltas) the 8-byte offset of the base entry, the
+ *  varint compressed length and the compressed bytes; and finally the
+ *  SHA-1 X of everything before it.
+ *
+ *  pack-X.idx: "PIDX", version, count, 256 cumulative counts of ids by
+ *  their first byte, the sorted 20-byte ids, their 8-byte offsets and X.
+ *  @author camvan
+ */
+public class PackFile {
+    public static final File PACK_DIR = join(Repository.OBJECTS_DIR, "pack");
+
+    private static final int PACK_MAGIC = 0x5041434b;
+    private static final int IDX_MAGIC = 0x50494458;
+    private static final int VERSION = 1;
+    private static final int IDX_HEADER = 12 + 256 * 4;
+    private static final byte FULL = 1;
+    private static final byte DELTA = 2;
+    /** The largest pack a memory mapping can hold. */
+    public static final long MAX_SIZE = Integer.MAX_VALUE;
+    /** Bytes of an entry besides its compressed data, at most. */
+    private static final int ENTRY_HEADER = 1 + 10 + 8 + 10;
+    private static final int CHECKSUM = 20;
+
+    /** Every pack in PACK_DIR, opened on first use. */
+    private static List<PackFile> packs;
+
+    private final File packFile;
+    private final File indexFile;
+    private final MappedByteBuffer pack;
+    private final MappedByteBuffer index;
+    private final int count;
+
+    private PackFile(File indexFile) {
+        this(join(PACK_DIR, indexFile.getName().replaceFirst("\\.idx$", ".pack")), indexFile);
+    }
+
+    private PackFile(File packFile, File indexFile) {
+        this.packFile = packFile;
+        this.indexFile = indexFile;
+        this.index = map(indexFile);
+        this.pack = map(packFile);
+        if (index.getInt(0) != IDX_MAGIC || pack.getInt(0) != PACK_MAGIC) {
+            throw new IllegalArgumentException("corrupt pack " + packFile.getName());
+        }
+        this.count = index.getInt(8);
+    }
+
+    /** Returns every pack of the repository. */
+    public static List<PackFile> all() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            List<String> names = plainFilenamesIn(PACK_DIR);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        packs.add(new PackFile(join(PACK_DIR, name)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Forgets the opened packs, so that the next all() sees PACK_DIR anew. */
+    public static void reload() {
+        packs = null;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String name() {
+        return packFile.getName();
+    }
+
+    public long byteSize() {
+        return packFile.length() + indexFile.length();
+    }
+
+    /** Deletes this pack and its index, through the Journal. */
+    public void delete() {
+        Journal.delete(packFile);
+        Journal.delete(indexFile);
+    }
+
+    public boolean contains(String id) {
+        return find(CommitGraph.fromHex(id)) >= 0;
+    }
+
+    /** Returns the ids of every blob in this pack, sorted. */
+    public List<String> ids() {
+        List<String> result = new ArrayList<>(count);
+        byte[] raw = new byte[20];
+        for (int i = 0; i < count; i += 1) {
+            index.get(IDX_HEADER + i * 20, raw);
+            result.add(CommitGraph.toHex(raw));
+        }
+        return result;
+    }
+
+    /** Returns the contents of blob ID, or null if it is not in this pack. */
+    public byte[] read(String id) {
+        int i = find(CommitGraph.fromHex(id));
+        if (i < 0) {
+            return null;
+        }
+        return readAt(index.getLong(IDX_HEADER + count * 20 + i * 8));
+    }
+
+    private byte[] readAt(long offset) {
+        ByteBuffer in = pack.duplicate();
+        in.position((int) offset);
+        byte type = in.get();
+        int size = (int) Codec.readVarint(in);
+        long baseOffset = type == DELTA ? in.getLong() : -1;
+        int compressed = (int) Codec.readVarint(in);
+        in.limit(in.position() + compressed);
+
+        byte[] data = new byte[size];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in);
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                n += inflater.inflate(data, n, size - n);
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return type == DELTA ? Delta.apply(readAt(baseOffset), data) : data;
+    }
+
+    /** Returns the position of RAW in the sorted ids, or -1. */
+    private int find(byte[] raw) {
+        int first = raw[0] & 0xff;
+        int lo = first == 0 ? 0 : index.getInt(12 + (first - 1) * 4);
+        int hi = index.getInt(12 + first * 4) - 1;
+        byte[] probe = new byte[20];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            index.get(IDX_HEADER + mid * 20, probe);
+            int cmp = Arrays.compareUnsigned(probe, raw);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a new pack.  Blobs must be added before any delta that
+     *  uses them as its base. */
+    public static class Writer {
+        private final File tmp;
+        private final MessageDigest digest;
+        private final DataOutputStream out;
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        /** blob id -> offset of its entry */
+        private final Map<String, Long> offsets = new HashMap<>();
+        private long position;
+
+        public Writer() {
+            if (!PACK_DIR.isDirectory() && !PACK_DIR.mkdirs()) {
+                throw new IllegalArgumentException("cannot create " + PACK_DIR.getPath());
+            }
+            tmp = join(PACK_DIR, "tmp-" + System.nanoTime());
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+                out = new DataOutputStream(new DigestOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(tmp)), digest));
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+            } catch (IOException | NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            position = 8;
+        }
+
+        public void addFull(String id, byte[] content) {
+            write(id, FULL, content.length, -1, content);
+        }
+
+        public void addDelta(String id, int size, String baseId, byte[] delta) {
+            write(id, DELTA, size, offsets.get(baseId), delta);
+        }
+
+        /** Returns true if an entry of LENGTH bytes before compression
+         *  surely fits in this pack.  Deflate may grow incompressible data
+         *  by a few bytes per 16 KiB, and this allows for it. */
+        public boolean fits(int length) {
+            long compressed = length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+            return position + ENTRY_HEADER + compressed + CHECKSUM <= MAX_SIZE;
+        }
+
+        public boolean isEmpty() {
+            return offsets.isEmpty();
+        }
+
+        private void write(String id, byte type, int size, long baseOffset, byte[] data) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            header.write(type);
+            Codec.writeVarint(header, size);
+            if (type == DELTA) {
+                header.writeBytes(ByteBuffer.allocate(8).putLong(baseOffset).array());
+            }
+            byte[] compressed = deflate(data);
+            Codec.writeVarint(header, compressed.length);
+            long length = header.size() + (long) compressed.length;
+            if (position + length + CHECKSUM > MAX_SIZE) {
+                discard();
+                throw new IllegalArgumentException("blob " + id + " does not fit in a pack of "
+                        + MAX_SIZE + " bytes");
+            }
+            try {
+                header.writeTo(out);
+                out.write(compressed);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            offsets.put(id, position);
+            // out.size() stops counting at Integer.MAX_VALUE
+            position += length;
+        }
+
+        /** Gives up the pack being written. */
+        private void discard() {
+            deflater.end();
+            try {
+                out.close();
+                Files.deleteIfExists(tmp.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        private byte[] deflate(byte[] data) {
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                result.write(buf, 0, deflater.deflate(buf));
+            }
+            return result.toByteArray();
+        }
+
+        /** Completes the pack, writes its index and returns it.  Both are
+         *  opened from their temporary names first, so a pack that cannot
+         *  be read never reaches PACK_DIR, and are forced to disk at the
+         *  next commit of the Journal. */
+        public PackFile finish() {
+            deflater.end();
+            byte[] checksum = digest.digest();
+            String name = "pack-" + CommitGraph.toHex(checksum);
+            File packFile = join(PACK_DIR, name + ".pack");
+            File indexFile = join(PACK_DIR, name + ".idx");
+            File tmpIndex = join(PACK_DIR, "tmp-" + name + ".idx");
+            try {
+                out.write(checksum);
+                out.close();
+                if (indexFile.exists()) {
+                    // an identical pack is already in place
+                    Files.delete(tmp.toPath());
+                    return new PackFile(indexFile);
+                }
+                Files.write(tmpIndex.toPath(), buildIndex(checksum));
+                try {
+                    if (new PackFile(tmp, tmpIndex).size() != offsets.size()) {
+                        throw new IllegalArgumentException("corrupt pack " + name);
+                    }
+                } catch (IllegalArgumentException excp) {
+                    Files.delete(tmp.toPath());
+                    Files.delete(tmpIndex.toPath());
+                    throw excp;
+                }
+                Files.move(tmp.toPath(), packFile.toPath());
+                Files.move(tmpIndex.toPath(), indexFile.toPath());
+                Journal.created(packFile);
+                Journal.created(indexFile);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return new PackFile(indexFile);
+        }
+
+        private byte[] buildIndex(byte[] checksum) {
+            List<String> ids = new ArrayList<>(offsets.keySet());
+            Collections.sort(ids);
+            ByteBuffer buf = ByteBuffer.allocate(IDX_HEADER + ids.size() * 28 + 20);
+            buf.putInt(IDX_MAGIC).putInt(VERSION).putInt(ids.size());
+            int[] fanout = new int[256];
+            for (String id : ids) {
+                fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+            }
+            int total = 0;
+            for (int n : fanout) {
+                total += n;
+                buf.putInt(total);
+            }
+            for (String id : ids) {
+                buf.put(CommitGraph.fromHex(id));
+            }
+            for (String id : ids) {
+                buf.putLong(offsets.get(id));
+            }
+            buf.put(checksum);
+            return buf.array();
+        }
+    }
+}
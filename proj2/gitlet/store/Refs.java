@@ -0,0 +1,114 @@
+package gitlet.store;
+
+import gitlet.Repository;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/** The branches of a repository (files in refs/heads holding a commit id)
+ *  and HEAD (a file holding the name of the current branch).
+ *
+ *  After defer(), writes are only kept in memory, where reads see them,
+ *  until the next flush(), so a batch of commands touches the files once.
+ *  @author camvan
+ */
+public class Refs {
+    /** branch -> commit id, or null if deleted, for writes not yet flushed */
+    private static final Map<String, String> pending = new HashMap<>();
+    private static String pendingHead;
+    private static boolean deferred;
+
+    /** Returns the name of the current branch. */
+    public static String currentBranch() {
+        if (pendingHead != null) {
+            return pendingHead;
+        }
+        return readContentsAsString(Repository.HEAD_FILE);
+    }
+
+    public static void setCurrentBranch(String name) {
+        pendingHead = name;
+        if (!deferred) {
+            flush();
+        }
+    }
+
+    /** Returns the commit id of branch NAME, or null if there is none. */
+    public static String branch(String name) {
+        if (pending.containsKey(name)) {
+            return pending.get(name);
+        }
+        File file = join(Repository.HEADS_DIR, name);
+        return file.isFile() ? readContentsAsString(file) : null;
+    }
+
+    public static boolean hasBranch(String name) {
+        return branch(name) != null;
+    }
+
+    public static void setBranch(String name, String commitId) {
+        pending.put(name, commitId);
+        if (!deferred) {
+            flush();
+        }
+    }
+
+    public static void deleteBranch(String name) {
+        pending.put(name, null);
+        if (!deferred) {
+            flush();
+        }
+    }
+
+    /** Returns the names of all branches in lexicographic order. */
+    public static List<String> branches() {
+        TreeSet<String> names = new TreeSet<>();
+        List<String> stored = plainFilenamesIn(Repository.HEADS_DIR);
+        if (stored != null) {
+            names.addAll(stored);
+        }
+        for (Map.Entry<String, String> e : pending.entrySet()) {
+            if (e.getValue() == null) {
+                names.remove(e.getKey());
+            } else {
+                names.add(e.getKey());
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Keeps later writes in memory until flush(). */
+    public static void defer() {
+        deferred = true;
+    }
+
+    /** Writes out every pending change, as one update of the Journal. */
+    public static void flush() {
+        Journal.begin();
+        for (Map.Entry<String, String> e : pending.entrySet()) {
+            File file = join(Repository.HEADS_DIR, e.getKey());
+            if (e.getValue() == null) {
+                Journal.delete(file);
+            } else {
+                Journal.write(file, e.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (pendingHead != null) {
+            Journal.write(Repository.HEAD_FILE, pendingHead.getBytes(StandardCharsets.UTF_8));
+        }
+        Journal.commit();
+        pending.clear();
+        pendingHead = null;
+    }
+
+    /** Drops the changes not yet written out and writes later ones
+     *  through again. */
+    public static void resume() {
+        pending.clear();
+        pendingHead = null;
+        deferred = false;
+    }
+}
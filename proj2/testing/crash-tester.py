@@ -0,0 +1,276 @@
+import sys, re, random, time
+from subprocess import Popen, run, PIPE, STDOUT, DEVNULL, TimeoutExpired
+from os.path import abspath, exists, join
+from getopt import getopt, GetoptError
+from os import remove
+from shutil import rmtree
+from tempfile import mkdtemp
+
+SHORT_USAGE = """\
+Usage: python3 crash-tester.py OPTIONS
+
+   OPTIONS may include
+       --progdir=DIR  Directory or JAR files containing gitlet application
+                      (default ..)
+       --rounds=N     Number of commands to kill (default 60)
+       --seed=N       Seed for the random choices, to repeat a run
+       --keep         Keep the test repository
+       --verbose      Print each round
+"""
+
+USAGE = SHORT_USAGE + """\
+
+Makes a repository in a temporary directory, then repeatedly runs one of
+gitlet commit, merge and reset and kills it with SIGKILL after a random
+delay, mostly after the JVM has started and before the command ends.
+After each kill it runs gitlet status, which finishes or forgets the
+interrupted update, and checks that the update was made whole or not at
+all:
+
+   commit  HEAD advanced to a child of the old head if and only if the
+           staged files were cleared.
+   reset   HEAD moved to the target if and only if the staged files were
+           cleared.
+   merge   HEAD is the old head, the given branch (a fast-forward) or a
+           merge commit of the two, and nothing is left staged either way.
+
+Files the killed command left changed in the working directory are then
+restored, since only the repository's own files are journaled.  At the
+end, log, global-log, branch -v and status must all still run.
+
+Exits with status 1 at the first violation, printing the round, the
+delay and the state found."""
+
+JAVA_COMMAND = "java"
+GITLET_CLASS = "gitlet.Main"
+
+FILES = ["f{}.txt".format(n) for n in range(5)]
+OTHER_FILES = ["g{}.txt".format(n) for n in range(3)]
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+class Violation(Exception):
+    pass
+
+def command(args):
+    return [JAVA_COMMAND, "-cp", prog_dir, GITLET_CLASS] + args
+
+def gitlet(*args):
+    """Runs gitlet with ARGS to completion and returns its output."""
+    result = run(command(list(args)), cwd=repo, stdin=DEVNULL, stdout=PIPE,
+                 stderr=STDOUT, universal_newlines=True)
+    if result.returncode != 0 or "Exception" in result.stdout:
+        raise Violation("gitlet {} failed:\n{}".format(" ".join(args),
+                                                        result.stdout))
+    return result.stdout
+
+def killed(delay, *args):
+    """Starts gitlet with ARGS and kills it after DELAY seconds.  Returns
+    True if it was still running."""
+    proc = Popen(command(list(args)), cwd=repo, stdin=DEVNULL, stdout=DEVNULL,
+                 stderr=DEVNULL)
+    try:
+        proc.wait(timeout=delay)
+        return False
+    except TimeoutExpired:
+        proc.kill()
+        proc.wait()
+        return True
+
+def write(name, text):
+    with open(join(repo, name), "w") as out:
+        out.write(text)
+
+def head():
+    return gitlet("log", "-n", "1", "--format=%H").strip()
+
+def head_parents():
+    return gitlet("log", "-n", "1", "--format=%P").split()
+
+def status():
+    """Returns the sections of gitlet status, each a list of lines.  This
+    is also what recovers the repository after a kill."""
+    sections = {}
+    name = None
+    for line in gitlet("status").splitlines():
+        M = re.match(r"=== (.*) ===$", line)
+        if M:
+            name = M.group(1)
+            sections[name] = []
+        elif line:
+            sections[name].append(line)
+    return sections
+
+def staged(sections):
+    return sections["Staged Files"] + sections["Removed Files"]
+
+def restore(sections):
+    """Puts back the working files a killed command left changed."""
+    for name in sections["Untracked Files"]:
+        remove(join(repo, name))
+    for line in sections["Modifications Not Staged For Commit"]:
+        gitlet("checkout", "--", line.split()[0])
+
+def setup():
+    gitlet("init")
+    for name in FILES:
+        write(name, "{} 0\n".format(name))
+        gitlet("add", name)
+    gitlet("commit", "files")
+    gitlet("branch", "other")
+
+def calibrate():
+    """Returns how long an uninterrupted commit takes, JVM included."""
+    write(FILES[0], "calibration\n")
+    gitlet("add", FILES[0])
+    start = time.time()
+    gitlet("commit", "calibration")
+    return time.time() - start
+
+def commit_round(n, delay):
+    name = random.choice(FILES)
+    write(name, "{} {}\n".format(name, n))
+    gitlet("add", name)
+    before = head()
+    ran = killed(delay, "commit", "round {}".format(n))
+    sections = status()
+    after = head()
+    advanced = after != before
+    cleared = not staged(sections)
+    if advanced != cleared:
+        raise Violation("commit: HEAD {} but staged files {}"
+                        .format("advanced" if advanced else "kept",
+                                staged(sections)))
+    if advanced and head_parents() != [before]:
+        raise Violation("commit: new head {} is not a child of {}"
+                        .format(after, before))
+    restore(sections)
+    return ran, advanced
+
+def reset_round(n, delay):
+    history = gitlet("log", "--format=%H").split()
+    before = history[0]
+    if len(history) < 2:
+        return commit_round(n, delay)
+    target = random.choice(history[1:])
+    name = random.choice(FILES)
+    write(name, "{} {} staged\n".format(name, n))
+    gitlet("add", name)
+    ran = killed(delay, "reset", target)
+    sections = status()
+    after = head()
+    if after not in (before, target):
+        raise Violation("reset: HEAD is {}, neither {} nor {}"
+                        .format(after, before, target))
+    moved = after == target
+    cleared = not staged(sections)
+    if moved != cleared:
+        raise Violation("reset: HEAD {} but staged files {}"
+                        .format("moved" if moved else "kept",
+                                staged(sections)))
+    restore(sections)
+    return ran, moved
+
+def merge_round(n, delay):
+    if staged(status()):
+        gitlet("commit", "leftovers before round {}".format(n))
+    gitlet("checkout", "other")
+    name = random.choice(OTHER_FILES)
+    write(name, "{} {}\n".format(name, n))
+    gitlet("add", name)
+    gitlet("commit", "other round {}".format(n))
+    given = head()
+    gitlet("checkout", "master")
+    before = head()
+    ran = killed(delay, "merge", "other")
+    sections = status()
+    after = head()
+    if staged(sections):
+        raise Violation("merge: staged files left {}".format(staged(sections)))
+    if after not in (before, given) and head_parents() != [before, given]:
+        raise Violation("merge: HEAD {} is not a merge of {} and {}"
+                        .format(after, before, given))
+    restore(sections)
+    return ran, after != before
+
+def check_integrity():
+    for args in (["log"], ["global-log"], ["branch", "-v"], ["status"]):
+        gitlet(*args)
+    heads = set(gitlet("global-log", "--format=%H").split())
+    if head() not in heads:
+        raise Violation("global-log does not list HEAD")
+
+if __name__ == "__main__":
+    prog_dir = None
+    rounds = 60
+    seed = None
+    keep = False
+    verbose = False
+
+    try:
+        opts, args = \
+            getopt(sys.argv[1:], '',
+                   ['progdir=', 'rounds=', 'seed=', 'keep', 'verbose'])
+        for opt, val in opts:
+            if opt == '--progdir':
+                prog_dir = val
+            elif opt == '--rounds':
+                rounds = int(val)
+            elif opt == '--seed':
+                seed = int(val)
+            elif opt == '--keep':
+                keep = True
+            elif opt == '--verbose':
+                verbose = True
+        if args:
+            Usage()
+    except (GetoptError, ValueError):
+        Usage()
+
+    prog_dir = abspath(prog_dir or "..")
+    if not exists(join(prog_dir, "gitlet")) and not prog_dir.endswith(".jar"):
+        print("Could not find gitlet.Main.", file=sys.stderr)
+        sys.exit(1)
+    if seed is None:
+        seed = random.randrange(1 << 30)
+    random.seed(seed)
+    print("Seed {}".format(seed))
+
+    repo = mkdtemp(prefix="gitlet-crash-")
+    kinds = [("commit", commit_round), ("reset", reset_round),
+             ("merge", merge_round)]
+    # kind -> [rounds, killed while running, applied]
+    counts = {kind: [0, 0, 0] for kind, _ in kinds}
+    try:
+        setup()
+        # most of a run is the start of the JVM, so the kills are spread
+        # over the later part of it, and past its end for the slower ones
+        span = calibrate()
+        for n in range(1, rounds + 1):
+            kind, play = random.choice(kinds)
+            delay = random.uniform(0.4 * span, 1.5 * span)
+            try:
+                ran, applied = play(n, delay)
+            except Violation as excp:
+                raise Violation("round {} ({} killed after {:.3f}s): {}"
+                                .format(n, kind, delay, excp))
+            counts[kind][0] += 1
+            counts[kind][1] += ran
+            counts[kind][2] += applied
+            if verbose:
+                print("{:4d} {:6s} {:.3f}s {} {}".format(
+                    n, kind, delay, "killed" if ran else "finished",
+                    "applied" if applied else "not applied"))
+        check_integrity()
+    except Violation as excp:
+        print("FAILED: {}".format(excp))
+        print("Repository kept in {}".format(repo))
+        sys.exit(1)
+    for kind, _ in kinds:
+        print("{}: {} rounds, {} killed while running, {} applied"
+              .format(kind, *counts[kind]))
+    print("All {} rounds left the repository consistent.".format(rounds))
+    if not keep:
+        rmtree(repo, ignore_errors=True)
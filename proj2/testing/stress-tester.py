@@ -0,0 +1,173 @@
+import sys
+from subprocess import run, PIPE, STDOUT, DEVNULL
+from os.path import abspath, exists, join
+from getopt import getopt, GetoptError
+from shutil import rmtree
+from tempfile import mkdtemp
+from threading import Thread, Lock
+
+SHORT_USAGE = """\
+Usage: python3 stress-tester.py OPTIONS
+
+   OPTIONS may include
+       --progdir=DIR     Directory or JAR files containing gitlet application
+                         (default ..)
+       --workers=N       Number of workers committing at once (default 4)
+       --iterations=N    Number of rounds of each worker (default 10)
+       --keep            Keep the test repository
+"""
+
+USAGE = SHORT_USAGE + """\
+
+Makes a repository in a temporary directory and runs N workers on it at
+once, each in a loop of
+
+   add <a new file of its own>
+   commit <a message naming the worker and round>
+   status
+   log -n 3
+
+together with one reader looping over status, log, global-log, find and
+branch -v until the workers are done.  Every command must succeed; a
+commit may only find nothing to commit because another worker committed
+the file it staged.  Afterwards the repository must be intact:
+
+   - status shows nothing staged, modified or untracked, so every file
+     written was committed with the contents it was added with;
+   - log lists the initial commit and exactly one commit per successful
+     commit command, and global-log lists no other commit;
+   - find locates every commit message once;
+   - gc --prune=now finds nothing unreachable to remove.
+
+Exits with status 1 if any of this fails."""
+
+JAVA_COMMAND = "java"
+GITLET_CLASS = "gitlet.Main"
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+def gitlet(*args):
+    """Runs gitlet with ARGS and returns its output, or raises
+    RuntimeError if it failed."""
+    result = run([JAVA_COMMAND, "-cp", prog_dir, GITLET_CLASS] + list(args),
+                 cwd=repo, stdin=DEVNULL, stdout=PIPE, stderr=STDOUT,
+                 universal_newlines=True)
+    if result.returncode != 0 or "Exception" in result.stdout:
+        raise RuntimeError("gitlet {} failed:\n{}".format(" ".join(args),
+                                                          result.stdout))
+    return result.stdout
+
+def report(excp):
+    with output_lock:
+        errors.append(str(excp))
+
+def worker(w):
+    try:
+        for i in range(iterations):
+            name = "w{}-{}.txt".format(w, i)
+            with open(join(repo, name), "w") as out:
+                out.write("worker {} round {}\n".format(w, i))
+            gitlet("add", name)
+            message = "worker {} round {}".format(w, i)
+            out = gitlet("commit", message)
+            if out == "":
+                with output_lock:
+                    committed.append(message)
+            elif out.strip() != "No changes added to the commit.":
+                raise RuntimeError("commit {!r} printed:\n{}".format(message, out))
+            gitlet("status")
+            gitlet("log", "-n", "3")
+    except RuntimeError as excp:
+        report(excp)
+
+def reader():
+    try:
+        while any(t.is_alive() for t in workers):
+            gitlet("status")
+            gitlet("log")
+            gitlet("global-log")
+            gitlet("find", "worker 0 round 0")
+            gitlet("branch", "-v")
+    except RuntimeError as excp:
+        report(excp)
+
+def check():
+    status = gitlet("status")
+    expected = ("=== Branches ===\n*master\n\n=== Staged Files ===\n\n"
+                "=== Removed Files ===\n\n"
+                "=== Modifications Not Staged For Commit ===\n\n"
+                "=== Untracked Files ===\n\n")
+    if status != expected:
+        raise RuntimeError("final status is not clean:\n" + status)
+    messages = gitlet("log", "--format=%s").splitlines()
+    if sorted(messages) != sorted(committed + ["initial commit"]):
+        raise RuntimeError("log lists {} commits for {} commits made"
+                           .format(len(messages) - 1, len(committed)))
+    logged = set(gitlet("log", "--format=%H").split())
+    if set(gitlet("global-log", "--format=%H").split()) != logged:
+        raise RuntimeError("global-log and log list different commits")
+    for message in committed:
+        found = gitlet("find", message).split()
+        if len(found) != 1 or found[0] not in logged:
+            raise RuntimeError("find {!r} printed {}".format(message, found))
+    gc = gitlet("gc", "--prune=now")
+    if not gc.startswith("Removed 0 commits, 0 trees, 0 blobs and 0 chunks"):
+        raise RuntimeError("gc found unreachable objects: " + gc)
+
+if __name__ == "__main__":
+    prog_dir = None
+    workers_count = 4
+    iterations = 10
+    keep = False
+
+    try:
+        opts, args = \
+            getopt(sys.argv[1:], '',
+                   ['progdir=', 'workers=', 'iterations=', 'keep'])
+        for opt, val in opts:
+            if opt == '--progdir':
+                prog_dir = val
+            elif opt == '--workers':
+                workers_count = int(val)
+            elif opt == '--iterations':
+                iterations = int(val)
+            elif opt == '--keep':
+                keep = True
+        if args:
+            Usage()
+    except (GetoptError, ValueError):
+        Usage()
+
+    prog_dir = abspath(prog_dir or "..")
+    if not exists(join(prog_dir, "gitlet")) and not prog_dir.endswith(".jar"):
+        print("Could not find gitlet.Main.", file=sys.stderr)
+        sys.exit(1)
+
+    repo = mkdtemp(prefix="gitlet-stress-")
+    output_lock = Lock()
+    errors = []
+    committed = []
+    gitlet("init")
+    workers = [Thread(target=worker, args=(w,)) for w in range(workers_count)]
+    for t in workers:
+        t.start()
+    read = Thread(target=reader)
+    read.start()
+    for t in workers + [read]:
+        t.join()
+    if not errors:
+        try:
+            check()
+        except RuntimeError as excp:
+            errors.append(str(excp))
+    if errors:
+        for error in errors:
+            print("FAILED: {}".format(error))
+        print("Repository kept in {}".format(repo))
+        sys.exit(1)
+    print("{} workers made {} commits in {} rounds each; the repository is "
+          "intact.".format(workers_count, len(committed), iterations))
+    if not keep:
+        rmtree(repo, ignore_errors=True)